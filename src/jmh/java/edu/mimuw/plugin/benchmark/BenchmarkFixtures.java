@@ -0,0 +1,53 @@
+package edu.mimuw.plugin.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.mimuw.sovaide.domain.model.Project;
+import edu.mimuw.sovaide.domain.model.repository.ProjectRepository;
+
+/**
+ * Plugin API objects wired to the in-memory stores, written as plain implementations of the calls the
+ * plugins make.
+ */
+final class BenchmarkFixtures {
+
+	static final String PROJECT_ID = "benchmark-project";
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * A project that keeps its files in memory, so every save replaces them.
+	 */
+	static Project project() {
+		return new Project() {
+			@Override
+			public String getId() {
+				return PROJECT_ID;
+			}
+		};
+	}
+
+	/**
+	 * A repository that keeps nothing but the project it was given, so that ingest benchmarks measure
+	 * parsing rather than storage. Every save is delayed by the given latency.
+	 */
+	static ProjectRepository repository(Project project, long latencyMicros) {
+		return new ProjectRepository() {
+			@Override
+			public Project save(Project saved) {
+				if (latencyMicros > 0) {
+					LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+				}
+				return saved;
+			}
+
+			@Override
+			public Optional<Project> findById(String id) {
+				return Optional.of(project);
+			}
+		};
+	}
+}
@@ -0,0 +1,155 @@
+package edu.mimuw.plugin.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.mimuw.sovaide.domain.graph.EdgeDirection;
+import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
+import edu.mimuw.sovaide.domain.graph.GraphEdge;
+import edu.mimuw.sovaide.domain.graph.GraphNode;
+
+/**
+ * Graph database kept in plain maps, exposed as a {@link GraphDBFacade}. Every facade call can be
+ * delayed by a fixed latency to simulate database round-trips.
+ */
+final class InMemoryGraphDB {
+
+	private final long latencyNanos;
+
+	private final List<StoredNode> nodes = new ArrayList<>();
+
+	private final Map<String, StoredNode> nodesById = new HashMap<>();
+
+	private final Map<String, List<GraphEdge>> outgoingEdges = new HashMap<>();
+
+	private final AtomicLong calls = new AtomicLong();
+
+	private final GraphDBFacade facade;
+
+	InMemoryGraphDB(long latencyMicros) {
+		this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+		this.facade = new Facade();
+	}
+
+	GraphDBFacade facade() {
+		return facade;
+	}
+
+	GraphNode addNode(String label, Map<String, Object> properties) {
+		String id = String.valueOf(nodes.size());
+		Map<String, Object> storedProperties = new HashMap<>(properties);
+		GraphNode node = new GraphNode() {
+			@Override
+			public String getId() {
+				return id;
+			}
+
+			@Override
+			public Map<String, Object> getProperties() {
+				return storedProperties;
+			}
+		};
+		StoredNode stored = new StoredNode(label, storedProperties, node);
+		nodes.add(stored);
+		nodesById.put(id, stored);
+		return node;
+	}
+
+	void clearEdges() {
+		outgoingEdges.clear();
+	}
+
+	long calls() {
+		return calls.get();
+	}
+
+	private void roundTrip() {
+		calls.incrementAndGet();
+		if (latencyNanos > 0) {
+			LockSupport.parkNanos(latencyNanos);
+		}
+	}
+
+	/**
+	 * The facade calls the plugins make, each one counted as a round-trip.
+	 */
+	private final class Facade implements GraphDBFacade {
+
+		@Override
+		public List<GraphNode> findNodes(String label, Map<String, Object> properties) {
+			roundTrip();
+			List<GraphNode> result = new ArrayList<>();
+			for (StoredNode node : nodes) {
+				if (node.label().equals(label) && node.matches(properties)) {
+					result.add(node.node());
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public GraphNode updateNode(String id, Map<String, Object> properties) {
+			roundTrip();
+			StoredNode node = nodesById.get(id);
+			if (node == null) {
+				return null;
+			}
+			node.properties().putAll(properties);
+			return node.node();
+		}
+
+		@Override
+		public GraphEdge createEdge(GraphNode source, GraphNode target, String type, Map<String, Object> properties) {
+			roundTrip();
+			GraphEdge edge = new StoredEdge(source, target);
+			outgoingEdges.computeIfAbsent(edgeKey(source, type), key -> new ArrayList<>()).add(edge);
+			return edge;
+		}
+
+		// only outgoing edges are needed by the plugins under benchmark
+		@Override
+		public List<GraphEdge> getEdges(GraphNode node, String type, EdgeDirection direction) {
+			roundTrip();
+			return new ArrayList<>(outgoingEdges.getOrDefault(edgeKey(node, type), List.of()));
+		}
+	}
+
+	private static String edgeKey(GraphNode source, String type) {
+		return type + ":" + source.getId();
+	}
+
+	private record StoredNode(String label, Map<String, Object> properties, GraphNode node) {
+
+		boolean matches(Map<String, Object> expected) {
+			return expected.entrySet().stream()
+					.allMatch(entry -> entry.getValue().equals(properties.get(entry.getKey())));
+		}
+	}
+
+	private static final class StoredEdge extends GraphEdge {
+
+		private final GraphNode source;
+
+		private final GraphNode target;
+
+		StoredEdge(GraphNode source, GraphNode target) {
+			this.source = source;
+			this.target = target;
+		}
+
+		@Override
+		public GraphNode getStartNode() {
+			return source;
+		}
+
+		@Override
+		public GraphNode getEndNode() {
+			return target;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package edu.mimuw.plugin.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.mimuw.plugin.jarparse.JarParseOptions;
+import edu.mimuw.plugin.jarparse.JarParseService;
+import edu.mimuw.plugin.jarparse.JarParseSummary;
+import edu.mimuw.plugin.summary.ParseProfile;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
+import edu.mimuw.sovaide.domain.model.Project;
+import edu.mimuw.sovaide.domain.model.repository.ProjectRepository;
+
+/**
+ * Ingest throughput of {@link JarParseService#parse} on generated source JARs, sequential against
+ * parallel, full against skeleton parsing, and with a cold against a warm parse-summary cache.
+ */
+@State(Scope.Benchmark)
+public class JarParseBenchmark {
+
+	@Param({"1000", "5000"})
+	public int classCount;
+
+	@Param({"1", "4"})
+	public int parallelism;
+
+	@Param({"0", "500"})
+	public int batchSize;
+
+	@Param({"FULL", "SKELETON"})
+	public ParseProfile profile;
+
+	@Param({"false", "true"})
+	public boolean warmCache;
+
+	private Path jar;
+
+	private Project project;
+
+	private ProjectRepository repository;
+
+	@Setup(Level.Trial)
+	public void generateJar() throws IOException {
+		jar = SyntheticProject.writeJar(SyntheticProject.generate(classCount, classCount / 20, 10, 10));
+		project = BenchmarkFixtures.project();
+		repository = BenchmarkFixtures.repository(project, 0);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareCache() {
+		if (!warmCache) {
+			SourceSummaryCache.shared().clear();
+		}
+	}
+
+	@Benchmark
+	public JarParseSummary parse() {
+		JarParseOptions options = new JarParseOptions(parallelism, batchSize, Long.MAX_VALUE, false, false,
+				profile);
+		return new JarParseService(repository, options).parse(project, jar.toString());
+	}
+}
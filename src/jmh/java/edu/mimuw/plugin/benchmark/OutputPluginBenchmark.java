@@ -0,0 +1,123 @@
+package edu.mimuw.plugin.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.mimuw.plugin.ClassImportsVisualizer;
+import edu.mimuw.plugin.ClassesImportRelationBuilder;
+import edu.mimuw.plugin.LongClassFinder;
+import edu.mimuw.plugin.ProjectSnapshotCache;
+import edu.mimuw.plugin.benchmark.SyntheticProject.Source;
+import edu.mimuw.plugin.cache.PluginResultCache;
+import edu.mimuw.plugin.summary.EntityMetrics;
+import edu.mimuw.plugin.summary.SourceSummary;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
+import edu.mimuw.sovaide.domain.plugin.DatabaseInterfaces;
+import edu.mimuw.sovaide.domain.plugin.PluginResult;
+import edu.mimuw.sovaide.domain.plugin.UserInput;
+
+/**
+ * Output plugins running against an in-memory graph database filled with generated entities. The
+ * latency parameter delays every facade call, which shows how a plugin scales with database
+ * round-trips rather than with work done in memory.
+ */
+@State(Scope.Benchmark)
+public class OutputPluginBenchmark {
+
+	@Param({"1000", "10000"})
+	public int classCount;
+
+	@Param({"5", "20"})
+	public int importsPerClass;
+
+	@Param({"0", "100"})
+	public long latencyMicros;
+
+	@Param({"false", "true"})
+	public boolean warmCache;
+
+	@Param({"false", "true"})
+	public boolean storedMetrics;
+
+	/** Whether repeated views of an unchanged project are served from the result cache. */
+	@Param({"false", "true"})
+	public boolean cachedResults;
+
+	private InMemoryGraphDB graphDB;
+
+	private DatabaseInterfaces dbInterfaces;
+
+	private final ClassesImportRelationBuilder importRelationBuilder = new ClassesImportRelationBuilder();
+
+	private final LongClassFinder longClassFinder = new LongClassFinder();
+
+	private final ClassImportsVisualizer classImportsVisualizer = new ClassImportsVisualizer();
+
+	@Setup(Level.Trial)
+	public void fillGraph() {
+		graphDB = new InMemoryGraphDB(latencyMicros);
+		SourceSummaryCache setupCache = new SourceSummaryCache(null, 0, 1);
+		for (Source source : SyntheticProject.generate(classCount, Math.max(1, classCount / 20), importsPerClass, 10)) {
+			Map<String, Object> properties = new HashMap<>(Map.of(
+					"projectId", BenchmarkFixtures.PROJECT_ID,
+					"name", source.className(),
+					"content", source.content()
+			));
+			if (storedMetrics) {
+				// what JarParser stores at ingest time
+				SourceSummary summary = setupCache.summarize(source.content());
+				properties.putAll(EntityMetrics.of(summary, summary.types().getFirst()));
+			}
+			graphDB.addNode("Entity", properties);
+		}
+		dbInterfaces = new DatabaseInterfaces(
+				BenchmarkFixtures.repository(BenchmarkFixtures.project(), latencyMicros), graphDB.facade());
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareInvocation() {
+		// every run of the builder starts from a graph without import edges, so each one resolves and writes
+		// all of them instead of finding them already stored
+		graphDB.clearEdges();
+		if (!warmCache) {
+			SourceSummaryCache.shared().clear();
+		}
+		if (!cachedResults) {
+			PluginResultCache.shared().clear();
+			ProjectSnapshotCache.shared().clear();
+		}
+	}
+
+	@Benchmark
+	public PluginResult classesImportRelationBuilder() {
+		return importRelationBuilder.execute(BenchmarkFixtures.PROJECT_ID, dbInterfaces, input(Map.of()));
+	}
+
+	@Benchmark
+	public PluginResult longClassFinder() {
+		return longClassFinder.execute(BenchmarkFixtures.PROJECT_ID, dbInterfaces,
+				input(Map.of("Number of lines threshold", "50")));
+	}
+
+	@Benchmark
+	public PluginResult classImportsVisualizer() {
+		return classImportsVisualizer.execute(BenchmarkFixtures.PROJECT_ID, dbInterfaces, input(Map.of()));
+	}
+
+	@Benchmark
+	public PluginResult classImportsVisualizerPackages() {
+		return classImportsVisualizer.execute(BenchmarkFixtures.PROJECT_ID, dbInterfaces,
+				input(Map.of("Level of detail (classes/packages)", "packages")));
+	}
+
+	private UserInput input(Map<String, String> properties) {
+		return new UserInput(null, properties);
+	}
+}
@@ -0,0 +1,96 @@
+package edu.mimuw.plugin.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates Java sources of configurable size and import density, and packs them into a source JAR
+ * laid out like the ones users upload.
+ */
+final class SyntheticProject {
+
+	record Source(String path, String packageName, String className, String content) {
+	}
+
+	private SyntheticProject() {
+	}
+
+	/**
+	 * @param classCount       number of generated classes
+	 * @param packageCount     number of packages the classes are spread over
+	 * @param importsPerClass  number of other generated classes each class imports
+	 * @param methodsPerClass  number of methods in each class, which controls the file size
+	 */
+	static List<Source> generate(int classCount, int packageCount, int importsPerClass, int methodsPerClass) {
+		Random random = new Random(42);
+		List<Source> sources = new ArrayList<>(classCount);
+		for (int i = 0; i < classCount; i++) {
+			String packageName = packageName(i % packageCount);
+			String className = "Generated" + i;
+
+			StringBuilder content = new StringBuilder();
+			content.append("package ").append(packageName).append(";\n\n");
+
+			TreeSet<String> imports = new TreeSet<>();
+			imports.add("java.util.List");
+			while (imports.size() <= Math.min(importsPerClass, classCount - 1)) {
+				int imported = random.nextInt(classCount);
+				if (imported != i) {
+					imports.add(packageName(imported % packageCount) + ".Generated" + imported);
+				}
+			}
+			imports.forEach(name -> content.append("import ").append(name).append(";\n"));
+			content.append("\n/**\n * Generated class number ").append(i).append(".\n */\n");
+			content.append("public class ").append(className).append(" {\n\n");
+			content.append("\tprivate final List<String> values;\n\n");
+			content.append("\tprivate int counter;\n\n");
+			content.append("\tpublic ").append(className).append("(List<String> values) {\n");
+			content.append("\t\tthis.values = values;\n");
+			content.append("\t}\n");
+			for (int m = 0; m < methodsPerClass; m++) {
+				content.append("\n\t// method ").append(m).append('\n');
+				content.append("\tpublic int method").append(m).append("(int argument) {\n");
+				content.append("\t\tString text = \"value { \" + argument;\n");
+				content.append("\t\tfor (int j = 0; j < argument; j++) {\n");
+				content.append("\t\t\tcounter += values.size() + text.length();\n");
+				content.append("\t\t}\n");
+				content.append("\t\treturn counter;\n");
+				content.append("\t}\n");
+			}
+			content.append("}\n");
+
+			String path = "src/main/java/" + packageName.replace('.', '/') + "/" + className + ".java";
+			sources.add(new Source(path, packageName, className, content.toString()));
+		}
+		return sources;
+	}
+
+	static Path writeJar(List<Source> sources) throws IOException {
+		Path jar = Files.createTempFile("synthetic-sources", ".jar");
+		jar.toFile().deleteOnExit();
+		try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out)) {
+			for (Source source : sources) {
+				jarOut.putNextEntry(new JarEntry(source.path()));
+				jarOut.write(source.content().getBytes(StandardCharsets.UTF_8));
+				jarOut.closeEntry();
+			}
+			jarOut.putNextEntry(new JarEntry("META-INF/application.properties"));
+			jarOut.write("name=synthetic\n".getBytes(StandardCharsets.UTF_8));
+			jarOut.closeEntry();
+		}
+		return jar;
+	}
+
+	private static String packageName(int index) {
+		return "com.example.generated.module" + (index % 10) + ".package" + index;
+	}
+}
@@ -1,11 +1,18 @@
 package edu.mimuw.plugin;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import edu.mimuw.plugin.cache.PluginResultCache;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
 import edu.mimuw.sovaide.domain.graph.EdgeDirection;
 import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
+import edu.mimuw.sovaide.domain.graph.GraphEdge;
 import edu.mimuw.sovaide.domain.graph.GraphNode;
 import edu.mimuw.sovaide.domain.plugin.DatabaseInterfaces;
 import edu.mimuw.sovaide.domain.plugin.PluginResult;
@@ -15,8 +22,26 @@ import edu.mimuw.sovaide.domain.plugin.UserInput;
 import edu.mimuw.sovaide.domain.plugin.frontend.FrontendComponentType;
 import edu.mimuw.sovaide.domain.plugin.frontend.GuiComponentData;
 
+/**
+ * Draws the imports between the classes of a project, or between its packages.
+ * <p>
+ * By default the imports are resolved from the entity sources, the same way
+ * {@link ClassesImportRelationBuilder} resolves the edges it stores, which needs no query per entity and
+ * works before the builder has run. The stored {@code IMPORTS} edges can be drawn instead; they are
+ * missing until the builder runs and include stale edges it never removes.
+ */
 public class ClassImportsVisualizer implements PluginSova {
 
+	private static final String LEVEL_OF_DETAIL = "Level of detail (classes/packages)";
+
+	private static final String EXPANDED_PACKAGE = "Package to expand (packages level only)";
+
+	private static final String IMPORT_SOURCE = "Imports to draw (resolved/stored)";
+
+	private static final String PACKAGES = "packages";
+
+	private static final String STORED = "stored";
+
 	@Override
 	public String getName() {
 		return "Class Imports Visualizer";
@@ -32,36 +57,182 @@ public class ClassImportsVisualizer implements PluginSova {
 		return false;
 	}
 
+	@Override
+	public List<String> getStringInputs() {
+		return List.of(LEVEL_OF_DETAIL, EXPANDED_PACKAGE, IMPORT_SOURCE, PluginRunMetrics.TIMING_TABLE_INPUT);
+	}
+
 	@Override
 	public PluginResult execute(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput) {
-		GraphDBFacade graphDBFacade = dbInterfaces.graphDBFacade();
+		// rendered again only after an ingest or import plugin wrote to the project
+		return PluginResultCache.shared().get(projectId, getName(), userInput,
+				() -> render(projectId, dbInterfaces, userInput));
+	}
+
+	private PluginResult render(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput) {
+		PluginRunMetrics metrics = new PluginRunMetrics(getName());
+		GraphDBFacade graphDBFacade = metrics.instrument(GraphDBFacade.class, dbInterfaces.graphDBFacade());
+
+		String levelOfDetail = userInput.properties().getOrDefault(LEVEL_OF_DETAIL, "classes").trim();
+		String expandedPackage = userInput.properties().getOrDefault(EXPANDED_PACKAGE, "").trim();
+		boolean stored = STORED.equalsIgnoreCase(userInput.properties().getOrDefault(IMPORT_SOURCE, "resolved").trim());
+
+		// the import relations are resolved once per revision of the project and shared with the other plugins,
+		// drawing the stored ones only needs the names
+		ProjectSnapshot snapshot = stored ?
+				ProjectSnapshotCache.shared().get(projectId, graphDBFacade, metrics, PluginRunControl.unbounded()) :
+				ProjectSnapshotCache.shared().getWithImports(projectId, graphDBFacade, metrics,
+						PluginRunControl.unbounded());
+		CsrGraph imports = stored ?
+				metrics.call(PluginRunMetrics.READ, () -> storedImports(projectId, graphDBFacade, snapshot)) :
+				snapshot.imports();
+
+		Map<String, Object> graphData = new HashMap<>(metrics.call(PluginRunMetrics.RENDER, () ->
+				PACKAGES.equalsIgnoreCase(levelOfDetail) ?
+						packageGraph(snapshot, imports, expandedPackage) :
+						classGraph(snapshot, imports)));
+		// tells which imports are drawn, as the two may differ
+		graphData.put("importSource", stored ? STORED : "resolved");
+		if (PluginRunMetrics.isTimingTableRequested(userInput)) {
+			graphData.put("timings", metrics.toMap());
+		}
+
+		return new PluginResult(projectId, getName(), new GuiComponentData(FrontendComponentType.Graph, graphData, Map.of()));
+	}
+
+	/**
+	 * Reads the {@code IMPORTS} edges stored by {@link ClassesImportRelationBuilder}, one query per entity,
+	 * into a graph over the entities of the snapshot. Edges to nodes outside the project are left out.
+	 */
+	private CsrGraph storedImports(String projectId, GraphDBFacade graphDBFacade, ProjectSnapshot snapshot) {
+		Map<String, Integer> indexes = new HashMap<>();
+		for (int i = 0; i < snapshot.entityCount(); i++) {
+			indexes.put(snapshot.id(i), i);
+		}
 
 		List<GraphNode> entities = graphDBFacade.findNodes("Entity", Map.of("projectId", projectId));
+		int[] sources = new int[16];
+		int[] targets = new int[16];
+		int edgeCount = 0;
+		for (GraphNode entity : entities) {
+			Integer source = indexes.get(String.valueOf(entity.getId()));
+			if (source == null) {
+				continue;
+			}
+			for (GraphEdge edge : graphDBFacade.getEdges(entity, "IMPORTS", EdgeDirection.OUTGOING)) {
+				Integer target = indexes.get(String.valueOf(edge.getEndNode().getId()));
+				if (target == null) {
+					continue;
+				}
+				if (edgeCount == sources.length) {
+					sources = Arrays.copyOf(sources, edgeCount * 2);
+					targets = Arrays.copyOf(targets, edgeCount * 2);
+				}
+				sources[edgeCount] = source;
+				targets[edgeCount] = target;
+				edgeCount++;
+			}
+		}
+		return CsrGraph.of(snapshot.entityCount(), sources, targets, edgeCount);
+	}
 
-		List<Map<String, Object>> nodes = entities.stream()
-				.map(entity -> Map.of(
-						"id", entity.getId(),
-						"name", entity.getProperties().getOrDefault("fullClassName", "").toString(),
-						"packageName", entity.getProperties().getOrDefault("packageName", "")
-				))
-				.toList();
+	private Map<String, Object> classGraph(ProjectSnapshot snapshot, CsrGraph imports) {
+		List<Map<String, Object>> nodes = new ArrayList<>(snapshot.entityCount());
+		for (int i = 0; i < snapshot.entityCount(); i++) {
+			nodes.add(classNode(snapshot, i));
+		}
 
-		List<Map<String, Object>> links = new ArrayList<>();
-		entities.forEach(entity -> {
-			graphDBFacade.getEdges(entity, "IMPORTS", EdgeDirection.OUTGOING).forEach(edge -> {
+		List<Map<String, Object>> links = new ArrayList<>(imports.edgeCount());
+		for (int node = 0; node < imports.nodeCount(); node++) {
+			for (int edge = imports.firstEdge(node); edge < imports.endEdge(node); edge++) {
 				links.add(Map.of(
-						"source", edge.getStartNode().getId(),
-						"target", edge.getEndNode().getId(),
+						"source", snapshot.id(node),
+						"target", snapshot.id(imports.target(edge)),
 						"type", "imports"
 				));
-			});
+			}
+		}
+
+		return Map.of(
+				"nodes", nodes,
+				"links", links
+		);
+	}
+
+	/**
+	 * Groups classes by package, so that the payload grows with the number of packages rather than the
+	 * number of classes. Classes of the expanded package, if any, are shown individually.
+	 */
+	private Map<String, Object> packageGraph(ProjectSnapshot snapshot, CsrGraph imports, String expandedPackage) {
+		Map<String, Integer> classCounts = new LinkedHashMap<>();
+		for (int i = 0; i < snapshot.entityCount(); i++) {
+			classCounts.merge(snapshot.packageName(i), 1, Integer::sum);
+		}
+
+		List<Map<String, Object>> nodes = new ArrayList<>();
+		classCounts.forEach((packageName, classCount) -> {
+			if (packageName.equals(expandedPackage)) {
+				return;
+			}
+			nodes.add(Map.of(
+					"id", packageNodeId(packageName),
+					"name", packageName.isEmpty() ? "(root package)" : packageName,
+					"packageName", packageName,
+					"classCount", classCount
+			));
 		});
+		for (int i = 0; i < snapshot.entityCount(); i++) {
+			if (!expandedPackage.isEmpty() && snapshot.packageName(i).equals(expandedPackage)) {
+				Map<String, Object> node = new HashMap<>(classNode(snapshot, i));
+				node.put("id", visibleNodeId(snapshot, i, expandedPackage));
+				nodes.add(node);
+			}
+		}
+
+		// links between the same pair of visible nodes are merged into one link with a weight
+		Map<String, Map<String, Integer>> weights = new LinkedHashMap<>();
+		for (int node = 0; node < imports.nodeCount(); node++) {
+			String source = visibleNodeId(snapshot, node, expandedPackage);
+			for (int edge = imports.firstEdge(node); edge < imports.endEdge(node); edge++) {
+				String target = visibleNodeId(snapshot, imports.target(edge), expandedPackage);
+				if (source.equals(target)) {
+					continue;
+				}
+				weights.computeIfAbsent(source, key -> new HashMap<>()).merge(target, 1, Integer::sum);
+			}
+		}
 
-		Map<String, Object> graphData = Map.of(
+		List<Map<String, Object>> links = new ArrayList<>();
+		weights.forEach((source, targets) -> targets.forEach((target, weight) -> links.add(Map.of(
+				"source", source,
+				"target", target,
+				"type", "imports",
+				"weight", weight
+		))));
+
+		return Map.of(
 				"nodes", nodes,
 				"links", links
 		);
+	}
 
-		return new PluginResult(projectId, getName(), new GuiComponentData(FrontendComponentType.Graph, graphData, Map.of()));
+	private Map<String, Object> classNode(ProjectSnapshot snapshot, int index) {
+		return Map.of(
+				"id", snapshot.id(index),
+				"name", snapshot.storedFullClassName(index),
+				"packageName", snapshot.storedPackageName(index)
+		);
+	}
+
+	private String visibleNodeId(ProjectSnapshot snapshot, int index, String expandedPackage) {
+		String packageName = snapshot.packageName(index);
+		if (!expandedPackage.isEmpty() && packageName.equals(expandedPackage)) {
+			return snapshot.id(index);
+		}
+		return packageNodeId(packageName);
+	}
+
+	private String packageNodeId(String packageName) {
+		return "package:" + packageName;
 	}
 }
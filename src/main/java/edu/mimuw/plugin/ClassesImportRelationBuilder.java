@@ -1,12 +1,26 @@
 package edu.mimuw.plugin;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.ImportDeclaration;
-
+import java.util.Set;
+
+import edu.mimuw.plugin.ImportGraph.ReferenceKind;
+import edu.mimuw.plugin.cache.PluginResultCache;
+import edu.mimuw.plugin.graph.BufferedGraphWriter;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.instrument.PluginRunMetrics.PhaseTimer;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
+import edu.mimuw.sovaide.domain.graph.EdgeDirection;
 import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
 import edu.mimuw.sovaide.domain.graph.GraphNode;
 import edu.mimuw.sovaide.domain.plugin.DatabaseInterfaces;
@@ -19,6 +33,11 @@ import edu.mimuw.sovaide.domain.plugin.frontend.GuiComponentData;
 
 public class ClassesImportRelationBuilder implements PluginSova {
 
+	private static final int WRITE_BATCH_SIZE = 500;
+
+	// entity property holding a fingerprint of the entities its stored import edges lead to
+	private static final String IMPORTS_FINGERPRINT = "importsFingerprint";
+
 	@Override
 	public String getName() {
 		return "Classes Import Relation Builder";
@@ -34,78 +53,143 @@ public class ClassesImportRelationBuilder implements PluginSova {
 		return false;
 	}
 
+	@Override
+	public List<String> getStringInputs() {
+		return List.of(PluginRunControl.TIME_BUDGET_INPUT, PluginRunMetrics.TIMING_TABLE_INPUT);
+	}
+
 	@Override
 	public PluginResult execute(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput) {
-		GraphDBFacade graphDBFacade = dbInterfaces.graphDBFacade();
+		try (PluginRunControl run = PluginRunControl.start(projectId, getName(), userInput)) {
+			return execute(projectId, dbInterfaces, userInput, run);
+		}
+	}
+
+	private PluginResult execute(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput,
+			PluginRunControl run) {
+		PluginRunMetrics metrics = new PluginRunMetrics(getName());
+		GraphDBFacade graphDBFacade = metrics.instrument(GraphDBFacade.class, dbInterfaces.graphDBFacade());
 
 		// find all entities in the project
-		List<GraphNode> entities = graphDBFacade.findNodes("Entity", Map.of("projectId", projectId)).stream().toList();
+		List<GraphNode> entities = metrics.call(PluginRunMetrics.READ,
+				() -> graphDBFacade.findNodes("Entity", Map.of("projectId", projectId)).stream().toList());
 
 		int totalEntitiesCount = entities.size();
+		int entitiesUpdated = 0;
 		int importsCreated = 0;
-
-		for (GraphNode entity : entities) {
-			String content = entity.getProperties().getOrDefault("content", "").toString();
-
-			try {
-				CompilationUnit unit = StaticJavaParser.parse(content);
-
-				String packageName = unit.getPackageDeclaration().isPresent() ?
-						unit.getPackageDeclaration().get().getNameAsString() :
-						"";
-
-				String entityName = entity.getProperties().get("name").toString();
-				String fullClassName = unit.getTypes().stream()
-						.filter(t -> t.getName().asString().equals(entityName))
-						.map(decl -> decl.getFullyQualifiedName().orElse(""))
-						.findFirst().orElse("");
-
-				graphDBFacade.updateNode(entity.getId(),
-						Map.of("packageName", packageName, "fullClassName", fullClassName));
-			} catch (Exception e) {
-				System.err.println("Error parsing entity " + entity.getId() + ": " + e.getMessage());
+		int importsUnchanged = 0;
+		int staleImports = 0;
+		Map<ReferenceKind, Integer> importsByKind = new EnumMap<>(ReferenceKind.class);
+
+		// every distinct file content is parsed at most once, and not at all if any plugin summarized it before,
+		// and imports are resolved against an in-memory index instead of querying the database for each one
+		ImportGraph graph = ImportGraph.build(entities, SourceSummaryCache.shared(), metrics, run);
+
+		PhaseTimer persistTimer = metrics.start(PluginRunMetrics.PERSIST);
+		BufferedGraphWriter writer = new BufferedGraphWriter(graphDBFacade, WRITE_BATCH_SIZE);
+
+		// after a stop, only entities whose references were resolved are written
+		for (int i = 0; i < graph.resolvedCount(); i++) {
+			Map<String, Object> properties = graph.entity(i).getProperties();
+			if (graph.isParsed(i) && (!graph.packageName(i).equals(properties.get("packageName"))
+					|| !graph.fullClassName(i).equals(properties.get("fullClassName")))) {
+				writer.updateNode(graph.entity(i),
+						Map.of("packageName", graph.packageName(i), "fullClassName", graph.fullClassName(i)));
+				entitiesUpdated++;
 			}
 		}
 
-		List<GraphNode> entitiesUpdated = graphDBFacade.findNodes("Entity", Map.of("projectId", projectId)).stream()
-				.toList();
-
-		for (GraphNode entity : entitiesUpdated) {
-			String content = entity.getProperties().getOrDefault("content", "").toString();
-
-			try {
-				CompilationUnit unit = StaticJavaParser.parse(content);
-
-				List<ImportDeclaration> imports = unit.getImports().stream().filter(im -> !im.isAsterisk()).toList();
-
-				for (ImportDeclaration importDeclaration : imports) {
-					String singleImport = importDeclaration.getNameAsString();
-					List<GraphNode> nodes = graphDBFacade.findNodes("Entity",
-							Map.of("projectId", projectId, "fullClassName", singleImport));
-					if (nodes.isEmpty()) {
-						continue;
-					}
-					if (nodes.size() > 1) {
-						System.out.println("Warning: Found " + nodes.size() + " entities for import: " + singleImport
-								+ ". Using the first one.");
-					}
-					GraphNode imported = nodes.getFirst();
-					graphDBFacade.createEdge(entity, imported, "IMPORTS", Map.of());
+		// only the difference between the resolved imports and the stored edges is written,
+		// so running the builder again on an unchanged project creates no edges; a stopped run keeps the
+		// edges written so far, and the next run adds the rest. The stored edges of an entity are only
+		// queried when its resolved imports differ from the ones fingerprinted on its node by an earlier run
+		Map<GraphNode, String> fingerprints = new LinkedHashMap<>();
+		int edge = 0;
+		run.begin("persist", graph.resolvedCount());
+		for (int i = 0; i < graph.resolvedCount() && !run.shouldStop(); i++) {
+			run.advance();
+			GraphNode entity = graph.entity(i);
+
+			// the first edge to each imported entity, by the id of the entity
+			Map<String, Integer> desiredEdges = new LinkedHashMap<>();
+			for (; edge < graph.edgeCount() && graph.edgeSource(edge) == i; edge++) {
+				desiredEdges.putIfAbsent(String.valueOf(graph.entity(graph.edgeTarget(edge)).getId()), edge);
+			}
+			desiredEdges.values().forEach(desired -> importsByKind.merge(graph.edgeKind(desired), 1, Integer::sum));
+			String fingerprint = importsFingerprint(desiredEdges.keySet());
+			if (fingerprint.equals(entity.getProperties().get(IMPORTS_FINGERPRINT))) {
+				importsUnchanged += desiredEdges.size();
+				continue;
+			}
+
+			Set<String> existingTargets = new HashSet<>();
+			graphDBFacade.getEdges(entity, "IMPORTS", EdgeDirection.OUTGOING)
+					.forEach(existing -> existingTargets.add(String.valueOf(existing.getEndNode().getId())));
+			for (Map.Entry<String, Integer> desired : desiredEdges.entrySet()) {
+				if (existingTargets.contains(desired.getKey())) {
+					importsUnchanged++;
+				} else {
+					writer.createEdge(entity, graph.entity(graph.edgeTarget(desired.getValue())), "IMPORTS",
+							Map.of("kind", graph.edgeKind(desired.getValue()).name()));
 					importsCreated++;
 				}
-			} catch (Exception e) {
-				System.err.println("Error parsing entity " + entity.getId() + ": " + e.getMessage());
+			}
+
+			// the facade cannot remove edges, so stale ones are only counted, and an entity that has any
+			// is not fingerprinted, so that every run reports them
+			int entityStaleImports = 0;
+			for (String existingTarget : existingTargets) {
+				if (!desiredEdges.containsKey(existingTarget)) {
+					entityStaleImports++;
+				}
+			}
+			staleImports += entityStaleImports;
+			if (entityStaleImports == 0) {
+				fingerprints.put(entity, fingerprint);
 			}
 		}
+		writer.close();
+
+		// fingerprints are only written once the edges they stand for are, so a failed run queries them again
+		BufferedGraphWriter fingerprintWriter = new BufferedGraphWriter(graphDBFacade, WRITE_BATCH_SIZE);
+		fingerprints.forEach((entity, fingerprint) ->
+				fingerprintWriter.updateNode(entity, Map.of(IMPORTS_FINGERPRINT, fingerprint)));
+		fingerprintWriter.close();
+		persistTimer.stop();
+		int writesIssued = writer.writesIssued() + fingerprintWriter.writesIssued();
+		if (writesIssued > 0) {
+			PluginResultCache.shared().invalidate(projectId);
+		}
 
 		StringBuilder summaryText = new StringBuilder();
 		summaryText.append("Import Relations Creator - Execution Summary\n");
 		summaryText.append("============================================\n\n");
 		summaryText.append("Total entities found: ").append(totalEntitiesCount).append("\n");
-		summaryText.append("Imports created: ").append(importsCreated).append("\n\n");
+		summaryText.append("Entities updated: ").append(entitiesUpdated).append("\n");
+		summaryText.append("Imports created: ").append(importsCreated).append("\n");
+		summaryText.append("Imports already present: ").append(importsUnchanged).append("\n");
+		summaryText.append("Stale imports found: ").append(staleImports).append("\n");
+		for (ReferenceKind kind : ReferenceKind.values()) {
+			summaryText.append("Imports of kind ").append(kind).append(": ")
+					.append(importsByKind.getOrDefault(kind, 0)).append("\n");
+		}
+		summaryText.append("Database writes: ").append(writesIssued).append("\n\n");
 		summaryText.append("Executed steps:\n");
-		summaryText.append("- Updated all entities with package names and full class names\n");
-		summaryText.append("- Created import relationship edges between entities\n");
+		summaryText.append("- Updated entities with changed package names and full class names\n");
+		summaryText.append("- Resolved single-type, static and on-demand imports, same-package references and qualified names\n");
+		summaryText.append("- Created missing import relationship edges between entities\n");
+		if (staleImports > 0) {
+			summaryText.append("- Left stale import edges in place, the graph database interface cannot remove edges\n");
+		}
+		if (!run.isComplete()) {
+			summaryText.append("\n").append(run.describeStop()).append("\n");
+		}
+		if (metrics.parseFailures() > 0) {
+			summaryText.append("\nEntities that could not be parsed: ").append(metrics.parseFailures()).append("\n");
+		}
+		if (PluginRunMetrics.isTimingTableRequested(userInput)) {
+			summaryText.append("\n").append(metrics.toText());
+		}
 
 		Map<String, Object> data = Map.of("text", summaryText.toString());
 
@@ -117,4 +201,22 @@ public class ClassesImportRelationBuilder implements PluginSova {
 		);
 		return new PluginResult(projectId, getName(), new GuiComponentData(FrontendComponentType.Text, data, config));
 	}
+
+	/**
+	 * @return SHA-256 hash of the sorted ids of the imported entities
+	 */
+	private static String importsFingerprint(Set<String> targets) {
+		List<String> sorted = new ArrayList<>(targets);
+		Collections.sort(sorted);
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String target : sorted) {
+				digest.update(target.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\n');
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
 }
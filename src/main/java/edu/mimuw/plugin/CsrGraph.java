@@ -0,0 +1,183 @@
+package edu.mimuw.plugin;
+
+import java.util.Arrays;
+
+/**
+ * Directed graph in compressed sparse row form: the targets of node {@code v} are
+ * {@code targets[offsets[v]]} to {@code targets[offsets[v + 1] - 1]}, sorted and without duplicates.
+ * Everything is held in primitive arrays, so graphs with millions of edges stay compact and the
+ * algorithms below allocate only their working arrays up front.
+ */
+final class CsrGraph {
+
+	/**
+	 * @param count       number of strongly connected components
+	 * @param componentOf component of every node; components are numbered in reverse topological order,
+	 *                    so every edge leads to a component with the same or a lower number
+	 * @param sizes       number of nodes in every component
+	 */
+	record Components(int count, int[] componentOf, int[] sizes) {
+	}
+
+	private final int[] offsets;
+
+	private final int[] targets;
+
+	private CsrGraph(int[] offsets, int[] targets) {
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	static CsrGraph of(ImportGraph graph) {
+		int edgeCount = graph.edgeCount();
+		int[] sources = new int[edgeCount];
+		int[] targets = new int[edgeCount];
+		for (int edge = 0; edge < edgeCount; edge++) {
+			sources[edge] = graph.edgeSource(edge);
+			targets[edge] = graph.edgeTarget(edge);
+		}
+		return of(graph.entityCount(), sources, targets, edgeCount);
+	}
+
+	/**
+	 * Builds the graph from the first {@code edgeCount} pairs of the given arrays, in any order.
+	 */
+	static CsrGraph of(int nodeCount, int[] sources, int[] targets, int edgeCount) {
+		int[] offsets = new int[nodeCount + 1];
+		for (int edge = 0; edge < edgeCount; edge++) {
+			offsets[sources[edge] + 1]++;
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			offsets[node + 1] += offsets[node];
+		}
+
+		int[] next = Arrays.copyOf(offsets, nodeCount);
+		int[] rows = new int[edgeCount];
+		for (int edge = 0; edge < edgeCount; edge++) {
+			rows[next[sources[edge]]++] = targets[edge];
+		}
+
+		// sort every row and drop repeated edges, compacting the rows towards the front
+		int written = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			int from = offsets[node];
+			int to = offsets[node + 1];
+			Arrays.sort(rows, from, to);
+			offsets[node] = written;
+			for (int i = from; i < to; i++) {
+				if (i == from || rows[i] != rows[i - 1]) {
+					rows[written++] = rows[i];
+				}
+			}
+		}
+		offsets[nodeCount] = written;
+		return new CsrGraph(offsets, written == edgeCount ? rows : Arrays.copyOf(rows, written));
+	}
+
+	int nodeCount() {
+		return offsets.length - 1;
+	}
+
+	int edgeCount() {
+		return targets.length;
+	}
+
+	int firstEdge(int node) {
+		return offsets[node];
+	}
+
+	/**
+	 * @return the edge just past the last edge of the node
+	 */
+	int endEdge(int node) {
+		return offsets[node + 1];
+	}
+
+	int target(int edge) {
+		return targets[edge];
+	}
+
+	int outDegree(int node) {
+		return offsets[node + 1] - offsets[node];
+	}
+
+	int[] inDegrees() {
+		int[] inDegrees = new int[nodeCount()];
+		for (int target : targets) {
+			inDegrees[target]++;
+		}
+		return inDegrees;
+	}
+
+	/**
+	 * Tarjan's algorithm with an explicit call stack, so that long import chains cannot overflow the
+	 * thread stack.
+	 */
+	Components stronglyConnectedComponents() {
+		int nodeCount = nodeCount();
+		int[] index = new int[nodeCount];
+		int[] lowLink = new int[nodeCount];
+		int[] componentOf = new int[nodeCount];
+		boolean[] onStack = new boolean[nodeCount];
+		int[] stack = new int[nodeCount];
+		int[] callNodes = new int[nodeCount];
+		int[] callEdges = new int[nodeCount];
+		Arrays.fill(index, -1);
+
+		int nextIndex = 0;
+		int componentCount = 0;
+		int stackSize = 0;
+		for (int root = 0; root < nodeCount; root++) {
+			if (index[root] >= 0) {
+				continue;
+			}
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			callNodes[0] = root;
+			callEdges[0] = offsets[root];
+			int depth = 1;
+
+			while (depth > 0) {
+				int node = callNodes[depth - 1];
+				int edge = callEdges[depth - 1];
+				if (edge < offsets[node + 1]) {
+					callEdges[depth - 1]++;
+					int target = targets[edge];
+					if (index[target] < 0) {
+						index[target] = lowLink[target] = nextIndex++;
+						stack[stackSize++] = target;
+						onStack[target] = true;
+						callNodes[depth] = target;
+						callEdges[depth] = offsets[target];
+						depth++;
+					} else if (onStack[target]) {
+						lowLink[node] = Math.min(lowLink[node], index[target]);
+					}
+					continue;
+				}
+
+				depth--;
+				if (lowLink[node] == index[node]) {
+					int member;
+					do {
+						member = stack[--stackSize];
+						onStack[member] = false;
+						componentOf[member] = componentCount;
+					} while (member != node);
+					componentCount++;
+				}
+				if (depth > 0) {
+					int caller = callNodes[depth - 1];
+					lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+				}
+			}
+		}
+
+		int[] sizes = new int[componentCount];
+		for (int component : componentOf) {
+			sizes[component]++;
+		}
+		return new Components(componentCount, componentOf, sizes);
+	}
+}
@@ -0,0 +1,277 @@
+package edu.mimuw.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.summary.SourceSummary;
+import edu.mimuw.plugin.summary.SourceSummary.ImportSummary;
+import edu.mimuw.plugin.summary.ReferenceScanner;
+import edu.mimuw.plugin.summary.ReferenceScanner.ScannedReferences;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
+import edu.mimuw.sovaide.domain.graph.GraphNode;
+
+/**
+ * Import relations between the entities of a project, resolved in memory in a single pass. Besides
+ * single-type imports, static imports, on-demand imports, simple names of classes from the same
+ * package and fully qualified names are resolved against a {@link PackageIndex}. Entities are addressed
+ * by their position in the list they were built from, and edges are stored as pairs of such positions,
+ * at most one per pair.
+ */
+final class ImportGraph {
+
+	/**
+	 * How a reference from one entity to another was found, stored as the {@code kind} of its edge.
+	 */
+	enum ReferenceKind {
+		/** Single-type import of the class or of one of its member types. */
+		IMPORT,
+		/** Static import of members of the class. */
+		STATIC_IMPORT,
+		/** Simple name of a class in the same package. */
+		SAME_PACKAGE,
+		/** Simple name of a class or member type imported on demand. */
+		WILDCARD_IMPORT,
+		/** Fully qualified name of a class or of one of its member types, in any package. */
+		QUALIFIED_NAME
+	}
+
+	private final List<GraphNode> entities;
+
+	private final String[] packageNames;
+
+	private final String[] fullClassNames;
+
+	private final boolean[] parsed;
+
+	private int[] edgeSources = new int[16];
+
+	private int[] edgeTargets = new int[16];
+
+	private ReferenceKind[] edgeKinds = new ReferenceKind[16];
+
+	private int edgeCount;
+
+	private int resolvedCount;
+
+	private ImportGraph(List<GraphNode> entities) {
+		this.entities = entities;
+		this.packageNames = new String[entities.size()];
+		this.fullClassNames = new String[entities.size()];
+		this.parsed = new boolean[entities.size()];
+	}
+
+	/**
+	 * Time spent summarizing sources is recorded as parsing, the rest as resolving. If the run stops early,
+	 * only the references of the first {@link #resolvedCount()} entities are resolved, and only against
+	 * the entities summarized by then.
+	 */
+	static ImportGraph build(List<GraphNode> entities, SourceSummaryCache summaries, PluginRunMetrics metrics,
+			PluginRunControl run) {
+		long start = System.nanoTime();
+		long parseNanos = 0;
+		ImportGraph graph = new ImportGraph(entities);
+		SourceSummary[] entitySummaries = new SourceSummary[entities.size()];
+		ScannedReferences[] entityReferences = new ScannedReferences[entities.size()];
+		Map<String, ScannedReferences> referencesByContent = new HashMap<>();
+		PackageIndex index = new PackageIndex();
+
+		run.begin("summarize", entities.size());
+		for (int i = 0; i < entities.size() && !run.shouldStop(); i++) {
+			run.advance();
+			GraphNode entity = entities.get(i);
+			String content = entity.getProperties().getOrDefault("content", "").toString();
+			graph.packageNames[i] = "";
+			graph.fullClassNames[i] = "";
+
+			long parseStart = System.nanoTime();
+			try {
+				SourceSummary summary = summaries.summarizeDeclarations(content);
+				parseNanos += System.nanoTime() - parseStart;
+				String entityName = entity.getProperties().getOrDefault("name", "").toString();
+
+				graph.packageNames[i] = summary.packageName();
+				graph.fullClassNames[i] = summary.types().stream()
+						.filter(t -> t.name().equals(entityName))
+						.map(summary::fullName)
+						.findFirst().orElse("");
+				graph.parsed[i] = true;
+				entitySummaries[i] = summary;
+				// files declaring several top-level types are scanned once, and each type keeps its own references
+				ScannedReferences references = referencesByContent.computeIfAbsent(content, ReferenceScanner::scan)
+						.topLevelType(entityName);
+				entityReferences[i] = references;
+				index.add(summary.packageName(), entityName, graph.fullClassNames[i], i);
+				if (!graph.fullClassNames[i].isEmpty()) {
+					for (String memberType : references.memberTypes(entityName)) {
+						index.addMemberType(graph.fullClassNames[i], memberType, i);
+					}
+				}
+			} catch (Exception e) {
+				parseNanos += System.nanoTime() - parseStart;
+				metrics.addParseFailures(1);
+				System.err.println("Error parsing entity " + entity.getId() + ": " + e.getMessage());
+			}
+		}
+
+		index.reportAmbiguousNames();
+
+		// marks the targets already linked from the current source, so every pair gets a single edge
+		int[] linkedFrom = new int[entities.size()];
+		Arrays.fill(linkedFrom, -1);
+		run.begin("resolve", entities.size());
+		for (int i = 0; i < entities.size() && !run.shouldStop(); i++) {
+			run.advance();
+			graph.resolvedCount = i + 1;
+			if (entitySummaries[i] != null) {
+				String entityName = entities.get(i).getProperties().getOrDefault("name", "").toString();
+				graph.resolve(i, entitySummaries[i], entityReferences[i], entityReferences[i].memberTypes(entityName),
+						index, linkedFrom);
+			}
+		}
+
+		metrics.record(PluginRunMetrics.PARSE, parseNanos);
+		metrics.record(PluginRunMetrics.RESOLVE, System.nanoTime() - start - parseNanos);
+		return graph;
+	}
+
+	/**
+	 * Resolves the references of one entity in the order Java looks names up: single-type and static
+	 * imports first, then classes of the entity's own package, then packages and classes imported on
+	 * demand. Qualified names need no imports and are resolved on their own.
+	 */
+	private void resolve(int source, SourceSummary summary, ScannedReferences references, Set<String> ownMemberTypes,
+			PackageIndex index, int[] linkedFrom) {
+		Set<String> importedNames = new HashSet<>();
+		List<String> onDemandImports = new ArrayList<>();
+		for (ImportSummary im : summary.imports()) {
+			if (!im.isStatic() && !im.isAsterisk()) {
+				importedNames.add(im.name().substring(im.name().lastIndexOf('.') + 1));
+				addEdge(source, index.findType(im.name()), ReferenceKind.IMPORT, linkedFrom);
+			} else if (!im.isStatic()) {
+				onDemandImports.add(im.name());
+			}
+		}
+		for (ImportSummary im : summary.imports()) {
+			if (im.isStatic()) {
+				// a static import names a member, or with an asterisk all members, of its class
+				String name = im.name();
+				String owner = im.isAsterisk() ? name : name.substring(0, Math.max(0, name.lastIndexOf('.')));
+				addEdge(source, index.findType(owner), ReferenceKind.STATIC_IMPORT, linkedFrom);
+			}
+		}
+
+		for (String simpleName : references.simpleNames()) {
+			if (importedNames.contains(simpleName) || ownMemberTypes.contains(simpleName)) {
+				// shadowed by a single-type import or by a member type of the entity itself
+				continue;
+			}
+			int target = index.findInPackage(summary.packageName(), simpleName);
+			if (target >= 0) {
+				addEdge(source, target, ReferenceKind.SAME_PACKAGE, linkedFrom);
+				continue;
+			}
+			for (String onDemand : onDemandImports) {
+				target = index.isPackage(onDemand) ?
+						index.findInPackage(onDemand, simpleName) :
+						index.findType(onDemand + "." + simpleName);
+				if (target >= 0) {
+					addEdge(source, target, ReferenceKind.WILDCARD_IMPORT, linkedFrom);
+					break;
+				}
+			}
+		}
+
+		for (String qualifiedName : references.qualifiedNames()) {
+			addEdge(source, findQualified(qualifiedName, index), ReferenceKind.QUALIFIED_NAME, linkedFrom);
+		}
+	}
+
+	/**
+	 * Finds the type a qualified name starts with, such as {@code a.b.Outer.Inner} in
+	 * {@code a.b.Outer.Inner.CONSTANT}, trying the longest prefix first.
+	 */
+	private static int findQualified(String qualifiedName, PackageIndex index) {
+		String name = qualifiedName;
+		for (int dot = name.lastIndexOf('.'); dot > 0; dot = name.lastIndexOf('.')) {
+			int target = index.findType(name);
+			if (target >= 0) {
+				return target;
+			}
+			name = name.substring(0, dot);
+		}
+		return -1;
+	}
+
+	private void addEdge(int source, int target, ReferenceKind kind, int[] linkedFrom) {
+		if (target < 0 || target == source || linkedFrom[target] == source) {
+			return;
+		}
+		linkedFrom[target] = source;
+		if (edgeCount == edgeSources.length) {
+			edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+			edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+			edgeKinds = Arrays.copyOf(edgeKinds, edgeCount * 2);
+		}
+		edgeSources[edgeCount] = source;
+		edgeTargets[edgeCount] = target;
+		edgeKinds[edgeCount] = kind;
+		edgeCount++;
+	}
+
+	int entityCount() {
+		return entities.size();
+	}
+
+	GraphNode entity(int index) {
+		return entities.get(index);
+	}
+
+	/**
+	 * @return whether the source of the entity could be parsed, otherwise its names are empty
+	 */
+	boolean isParsed(int index) {
+		return parsed[index];
+	}
+
+	String packageName(int index) {
+		return packageNames[index];
+	}
+
+	String fullClassName(int index) {
+		return fullClassNames[index];
+	}
+
+	int edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * @return number of entities, from the first one, whose references were resolved; less than
+	 *         {@link #entityCount()} only if the run stopped early
+	 */
+	int resolvedCount() {
+		return resolvedCount;
+	}
+
+	/**
+	 * Edges are ordered by their source entity, so all imports of an entity are consecutive.
+	 */
+	int edgeSource(int edge) {
+		return edgeSources[edge];
+	}
+
+	int edgeTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	ReferenceKind edgeKind(int edge) {
+		return edgeKinds[edge];
+	}
+}
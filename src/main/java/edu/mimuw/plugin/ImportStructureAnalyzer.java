@@ -0,0 +1,419 @@
+package edu.mimuw.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.mimuw.plugin.CsrGraph.Components;
+import edu.mimuw.plugin.cache.PluginResultCache;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.instrument.PluginRunMetrics.PhaseTimer;
+import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
+import edu.mimuw.sovaide.domain.plugin.DatabaseInterfaces;
+import edu.mimuw.sovaide.domain.plugin.PluginResult;
+import edu.mimuw.sovaide.domain.plugin.PluginSova;
+import edu.mimuw.sovaide.domain.plugin.PluginType;
+import edu.mimuw.sovaide.domain.plugin.UserInput;
+import edu.mimuw.sovaide.domain.plugin.frontend.FrontendComponentType;
+import edu.mimuw.sovaide.domain.plugin.frontend.GuiComponentData;
+
+/**
+ * Reports the structure of the import graph: import cycles between classes, the classes with the
+ * highest fan-in and fan-out, and how the packages layer on top of each other. Package dependencies
+ * inside a package cycle cannot be layered and are reported as violations, those backed by the fewest
+ * imports first, as they are the cheapest to remove.
+ */
+public class ImportStructureAnalyzer implements PluginSova {
+
+	private static final String RANKING_SIZE = "Entries per ranking";
+
+	private static final int DEFAULT_RANKING_SIZE = 10;
+
+	private static final int MAX_LISTED_MEMBERS = 10;
+
+	@Override
+	public String getName() {
+		return "Import Structure Analyzer";
+	}
+
+	@Override
+	public PluginType getType() {
+		return PluginType.OUTPUT;
+	}
+
+	@Override
+	public boolean isAcceptingFile() {
+		return false;
+	}
+
+	@Override
+	public List<String> getStringInputs() {
+		return List.of(RANKING_SIZE, PluginRunMetrics.TIMING_TABLE_INPUT);
+	}
+
+	@Override
+	public PluginResult execute(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput) {
+		// rendered again only after an ingest or import plugin wrote to the project
+		return PluginResultCache.shared().get(projectId, getName(), userInput,
+				() -> render(projectId, dbInterfaces, userInput));
+	}
+
+	private PluginResult render(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput) {
+		PluginRunMetrics metrics = new PluginRunMetrics(getName());
+		GraphDBFacade graphDBFacade = metrics.instrument(GraphDBFacade.class, dbInterfaces.graphDBFacade());
+
+		int rankingSize;
+		try {
+			rankingSize = Integer.parseInt(
+					userInput.properties().getOrDefault(RANKING_SIZE, String.valueOf(DEFAULT_RANKING_SIZE)).trim()
+			);
+		} catch (NumberFormatException e) {
+			rankingSize = DEFAULT_RANKING_SIZE; // fallback default
+		}
+		int limit = Math.max(rankingSize, 1);
+
+		// the graph is resolved from the entity sources once per revision of the project and shared with the
+		// other plugins, instead of a getEdges call per entity
+		ProjectSnapshot snapshot = ProjectSnapshotCache.shared().getWithImports(projectId, graphDBFacade, metrics,
+				PluginRunControl.unbounded());
+
+		PhaseTimer analyzeTimer = metrics.start(PluginRunMetrics.ANALYZE);
+		CsrGraph classes = snapshot.imports();
+		Components classComponents = classes.stronglyConnectedComponents();
+		int[] inDegrees = classes.inDegrees();
+		PackageGraph packages = PackageGraph.of(snapshot, classes);
+		Components packageComponents = packages.graph().stronglyConnectedComponents();
+		int[] layers = layers(packages.graph(), packageComponents);
+		analyzeTimer.stop();
+
+		PhaseTimer renderTimer = metrics.start(PluginRunMetrics.RENDER);
+		StringBuilder html = new StringBuilder();
+		html.append("<div style='font-family: Arial, sans-serif;'>");
+		html.append("<h2 style='color: #333; margin-bottom: 20px;'>Import Structure Analysis Results</h2>");
+		appendSummary(html, classes, classComponents, packages, packageComponents, layers);
+		appendCycles(html, snapshot, classComponents, limit);
+		appendDegreeRanking(html, snapshot, "Highest fan-in (imported by most classes)", inDegrees, limit);
+		int[] outDegrees = new int[classes.nodeCount()];
+		for (int node = 0; node < outDegrees.length; node++) {
+			outDegrees[node] = classes.outDegree(node);
+		}
+		appendDegreeRanking(html, snapshot, "Highest fan-out (imports most classes)", outDegrees, limit);
+		appendLayers(html, packages, packageComponents, layers);
+		appendViolations(html, packages, packageComponents, limit);
+		renderTimer.stop();
+		if (PluginRunMetrics.isTimingTableRequested(userInput)) {
+			html.append(metrics.toHtml());
+		}
+		html.append("</div>");
+
+		Map<String, Object> data = Map.of(
+			"html", html.toString()
+		);
+
+		Map<String, Object> config = Map.of(
+			"padding", "20px",
+			"border", "1px solid #ddd",
+			"borderRadius", "8px",
+			"backgroundColor", "#ffffff",
+			"minHeight", "200px",
+			"overflow", "auto"
+		);
+
+		return new PluginResult(projectId, getName(), new GuiComponentData(FrontendComponentType.HTML, data, config));
+	}
+
+	/**
+	 * Classes grouped by package, with one edge per pair of packages that has at least one import
+	 * between them.
+	 *
+	 * @param weights number of class imports behind every package edge, indexed like the edges
+	 */
+	private record PackageGraph(List<String> names, CsrGraph graph, int[] weights) {
+
+		static PackageGraph of(ProjectSnapshot snapshot, CsrGraph classes) {
+			Map<String, Integer> ids = new HashMap<>();
+			List<String> names = new ArrayList<>();
+			int[] packageOf = new int[snapshot.entityCount()];
+			for (int i = 0; i < packageOf.length; i++) {
+				packageOf[i] = -1;
+				if (snapshot.isParsed(i)) {
+					packageOf[i] = ids.computeIfAbsent(snapshot.packageName(i), name -> {
+						names.add(name);
+						return names.size() - 1;
+					});
+				}
+			}
+
+			// every import between two packages becomes one key; equal keys are counted after sorting
+			long packageCount = names.size();
+			long[] keys = new long[classes.edgeCount()];
+			int keyCount = 0;
+			for (int node = 0; node < classes.nodeCount(); node++) {
+				for (int edge = classes.firstEdge(node); edge < classes.endEdge(node); edge++) {
+					int source = packageOf[node];
+					int target = packageOf[classes.target(edge)];
+					if (source >= 0 && target >= 0 && source != target) {
+						keys[keyCount++] = source * packageCount + target;
+					}
+				}
+			}
+			Arrays.sort(keys, 0, keyCount);
+
+			int[] sources = new int[keyCount];
+			int[] targets = new int[keyCount];
+			int[] weights = new int[keyCount];
+			int edgeCount = 0;
+			for (int i = 0; i < keyCount; i++) {
+				if (i > 0 && keys[i] == keys[i - 1]) {
+					weights[edgeCount - 1]++;
+					continue;
+				}
+				sources[edgeCount] = (int) (keys[i] / packageCount);
+				targets[edgeCount] = (int) (keys[i] % packageCount);
+				weights[edgeCount] = 1;
+				edgeCount++;
+			}
+			// the edges are already sorted by source and target, which is the order the CSR form keeps
+			CsrGraph graph = CsrGraph.of(names.size(), sources, targets, edgeCount);
+			return new PackageGraph(names, graph, Arrays.copyOf(weights, edgeCount));
+		}
+
+		String name(int node) {
+			String name = names.get(node);
+			return name.isEmpty() ? "(root package)" : name;
+		}
+	}
+
+	/**
+	 * Layer of every package component: 0 for components that import no other component, otherwise one
+	 * more than the highest layer they import from.
+	 */
+	private static int[] layers(CsrGraph graph, Components components) {
+		int[] membersStart = new int[components.count() + 1];
+		for (int component = 0; component < components.count(); component++) {
+			membersStart[component + 1] = membersStart[component] + components.sizes()[component];
+		}
+		int[] members = new int[graph.nodeCount()];
+		int[] next = Arrays.copyOf(membersStart, components.count());
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			members[next[components.componentOf()[node]]++] = node;
+		}
+
+		// components are numbered in reverse topological order, so imported components come first
+		int[] layers = new int[components.count()];
+		for (int component = 0; component < components.count(); component++) {
+			for (int i = membersStart[component]; i < membersStart[component + 1]; i++) {
+				int node = members[i];
+				for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++) {
+					int target = components.componentOf()[graph.target(edge)];
+					if (target != component) {
+						layers[component] = Math.max(layers[component], layers[target] + 1);
+					}
+				}
+			}
+		}
+		return layers;
+	}
+
+	private static void appendSummary(StringBuilder html, CsrGraph classes, Components classComponents,
+			PackageGraph packages, Components packageComponents, int[] layers) {
+		int cycles = 0;
+		int classesInCycles = 0;
+		for (int size : classComponents.sizes()) {
+			if (size > 1) {
+				cycles++;
+				classesInCycles += size;
+			}
+		}
+		int layerCount = 0;
+		for (int layer : layers) {
+			layerCount = Math.max(layerCount, layer + 1);
+		}
+
+		html.append("<div style='background: #f0f0f0; padding: 15px; border-radius: 5px; margin-bottom: 20px;'>");
+		html.append("<h3 style='margin: 0; color: #666;'>Summary</h3>");
+		html.append("<p style='margin: 5px 0;'><strong>").append(classes.nodeCount()).append("</strong> classes with <strong>")
+			.append(classes.edgeCount()).append("</strong> resolved imports</p>");
+		html.append("<p style='margin: 5px 0;'><strong>").append(cycles).append("</strong> import cycles involving <strong>")
+			.append(classesInCycles).append("</strong> classes</p>");
+		html.append("<p style='margin: 5px 0;'><strong>").append(packages.graph().nodeCount())
+			.append("</strong> packages with <strong>").append(packages.graph().edgeCount())
+			.append("</strong> dependencies in <strong>").append(layerCount).append("</strong> layers</p>");
+		html.append("<p style='margin: 5px 0;'><strong>").append(countViolations(packages, packageComponents))
+			.append("</strong> package dependencies violate the layering</p>");
+		html.append("</div>");
+	}
+
+	private static void appendCycles(StringBuilder html, ProjectSnapshot snapshot, Components components, int limit) {
+		html.append("<h3 style='color: #333; margin-bottom: 15px;'>Largest import cycles</h3>");
+		long[] keys = new long[components.count()];
+		int keyCount = 0;
+		for (int component = 0; component < components.count(); component++) {
+			if (components.sizes()[component] > 1) {
+				keys[keyCount++] = descendingKey(components.sizes()[component], component, components.count());
+			}
+		}
+		if (keyCount == 0) {
+			html.append("<p style='color: #4CAF50; font-weight: bold;'>No import cycles.</p>");
+			return;
+		}
+		Arrays.sort(keys, 0, keyCount);
+
+		List<List<String>> members = new ArrayList<>();
+		int[] listed = new int[components.count()];
+		Arrays.fill(listed, -1);
+		for (int i = 0; i < Math.min(limit, keyCount); i++) {
+			listed[keyIndex(keys[i], components.count())] = i;
+			members.add(new ArrayList<>());
+		}
+		for (int node = 0; node < snapshot.entityCount(); node++) {
+			int position = listed[components.componentOf()[node]];
+			if (position >= 0) {
+				members.get(position).add(className(snapshot, node));
+			}
+		}
+
+		appendTableStart(html, "Classes", "Members");
+		for (int i = 0; i < members.size(); i++) {
+			List<String> names = members.get(i);
+			names.sort(null);
+			String listedNames = String.join(", ", names.subList(0, Math.min(MAX_LISTED_MEMBERS, names.size())));
+			if (names.size() > MAX_LISTED_MEMBERS) {
+				listedNames += " and " + (names.size() - MAX_LISTED_MEMBERS) + " more";
+			}
+			appendRow(html, i, String.valueOf(names.size()), listedNames);
+		}
+		appendTableEnd(html);
+	}
+
+	private static void appendDegreeRanking(StringBuilder html, ProjectSnapshot snapshot, String title, int[] degrees, int limit) {
+		html.append("<h3 style='color: #333; margin-bottom: 15px;'>").append(title).append("</h3>");
+		long[] keys = new long[degrees.length];
+		for (int node = 0; node < degrees.length; node++) {
+			keys[node] = descendingKey(degrees[node], node, degrees.length);
+		}
+		Arrays.sort(keys);
+
+		appendTableStart(html, "Class", "Classes");
+		for (int i = 0; i < Math.min(limit, keys.length); i++) {
+			int node = keyIndex(keys[i], degrees.length);
+			if (degrees[node] == 0) {
+				break;
+			}
+			appendRow(html, i, className(snapshot, node), String.valueOf(degrees[node]));
+		}
+		appendTableEnd(html);
+	}
+
+	private static void appendLayers(StringBuilder html, PackageGraph packages, Components components, int[] layers) {
+		html.append("<h3 style='color: #333; margin-bottom: 15px;'>Package layers (0 imports no other package)</h3>");
+		List<List<String>> byLayer = new ArrayList<>();
+		for (int node = 0; node < packages.graph().nodeCount(); node++) {
+			int layer = layers[components.componentOf()[node]];
+			while (byLayer.size() <= layer) {
+				byLayer.add(new ArrayList<>());
+			}
+			byLayer.get(layer).add(packages.name(node));
+		}
+
+		appendTableStart(html, "Layer", "Packages");
+		for (int layer = 0; layer < byLayer.size(); layer++) {
+			List<String> names = byLayer.get(layer);
+			names.sort(null);
+			appendRow(html, layer, String.valueOf(layer), String.join(", ", names));
+		}
+		appendTableEnd(html);
+	}
+
+	private static void appendViolations(StringBuilder html, PackageGraph packages, Components components, int limit) {
+		html.append("<h3 style='color: #333; margin-bottom: 15px;'>Layering violations (cheapest to remove first)</h3>");
+		CsrGraph graph = packages.graph();
+		long[] keys = new long[graph.edgeCount()];
+		int keyCount = 0;
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++) {
+				if (isViolation(components, node, graph.target(edge))) {
+					keys[keyCount++] = ((long) packages.weights()[edge] << 32) | edge;
+				}
+			}
+		}
+		if (keyCount == 0) {
+			html.append("<p style='color: #4CAF50; font-weight: bold;'>The packages are layered without cycles.</p>");
+			return;
+		}
+		Arrays.sort(keys, 0, keyCount);
+
+		int[] sourceOf = new int[graph.edgeCount()];
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			Arrays.fill(sourceOf, graph.firstEdge(node), graph.endEdge(node), node);
+		}
+		appendTableStart(html, "Dependency", "Imports");
+		for (int i = 0; i < Math.min(limit, keyCount); i++) {
+			int edge = (int) keys[i];
+			appendRow(html, i,
+					packages.name(sourceOf[edge]) + " &rarr; " + packages.name(graph.target(edge)),
+					String.valueOf(packages.weights()[edge]));
+		}
+		appendTableEnd(html);
+	}
+
+	private static int countViolations(PackageGraph packages, Components components) {
+		CsrGraph graph = packages.graph();
+		int violations = 0;
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++) {
+				if (isViolation(components, node, graph.target(edge))) {
+					violations++;
+				}
+			}
+		}
+		return violations;
+	}
+
+	private static boolean isViolation(Components components, int source, int target) {
+		return components.componentOf()[source] == components.componentOf()[target];
+	}
+
+	/**
+	 * Sort key that orders by value descending and then by index ascending.
+	 */
+	private static long descendingKey(int value, int index, int count) {
+		return -((long) value * count + (count - 1 - index));
+	}
+
+	private static int keyIndex(long key, int count) {
+		return (int) (count - 1 - (-key) % count);
+	}
+
+	private static String className(ProjectSnapshot snapshot, int node) {
+		String name = snapshot.fullClassName(node);
+		return name.isEmpty() ? snapshot.name(node) : name;
+	}
+
+	private static void appendTableStart(StringBuilder html, String firstColumn, String secondColumn) {
+		html.append("<table style='width: 100%; border-collapse: collapse; box-shadow: 0 2px 4px rgba(0,0,0,0.1); margin-bottom: 20px;'>");
+		html.append("<thead>");
+		html.append("<tr style='background-color: #4CAF50; color: white;'>");
+		html.append("<th style='padding: 12px; text-align: left; border: 1px solid #ddd;'>").append(firstColumn).append("</th>");
+		html.append("<th style='padding: 12px; text-align: left; border: 1px solid #ddd;'>").append(secondColumn).append("</th>");
+		html.append("</tr>");
+		html.append("</thead>");
+		html.append("<tbody>");
+	}
+
+	private static void appendRow(StringBuilder html, int row, String first, String second) {
+		String rowColor = row % 2 == 0 ? "#f9f9f9" : "#ffffff";
+		html.append("<tr style='background-color: ").append(rowColor).append(";'>");
+		html.append("<td style='padding: 10px; border: 1px solid #ddd; font-weight: bold;'>").append(first).append("</td>");
+		html.append("<td style='padding: 10px; border: 1px solid #ddd; color: #666;'>").append(second).append("</td>");
+		html.append("</tr>");
+	}
+
+	private static void appendTableEnd(StringBuilder html) {
+		html.append("</tbody>");
+		html.append("</table>");
+	}
+}
@@ -1,17 +1,18 @@
 package edu.mimuw.plugin;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
-import com.github.javaparser.ast.nodeTypes.NodeWithName;
-
+import edu.mimuw.plugin.LongClassRanking.LongClass;
+import edu.mimuw.plugin.cache.PluginResultCache;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.instrument.PluginRunMetrics.PhaseTimer;
+import edu.mimuw.plugin.summary.SourceScanner;
+import edu.mimuw.plugin.summary.SourceScanner.ScannedSource;
 import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
 import edu.mimuw.sovaide.domain.graph.GraphNode;
+import edu.mimuw.sovaide.domain.model.EntityKind;
 import edu.mimuw.sovaide.domain.plugin.DatabaseInterfaces;
 import edu.mimuw.sovaide.domain.plugin.PluginResult;
 import edu.mimuw.sovaide.domain.plugin.PluginSova;
@@ -24,6 +25,25 @@ public class LongClassFinder implements PluginSova {
 
 	private static final String NUMBER_OF_LINES_THRESHOLD = "Number of lines threshold";
 
+	private static final String PAGE_SIZE = "Classes per page";
+
+	private static final String PAGE = "Page number";
+
+	private static final int DEFAULT_PAGE_SIZE = 50;
+
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	// approximate length of the summary and table header, and of a table row, in the rendered page
+	private static final int PAGE_HTML_CHARS = 2048;
+
+	private static final int ROW_HTML_CHARS = 400;
+
+	private static final int SCAN_ROW_HTML_CHARS = 640;
+
+	private static final String MEASUREMENT_MODE = "Measurement mode (parse/scan)";
+
+	private static final String SCAN = "scan";
+
 	@Override
 	public String getName() {
 		return "Long Class Finder";
@@ -41,12 +61,23 @@ public class LongClassFinder implements PluginSova {
 
 	@Override
 	public List<String> getStringInputs() {
-		return List.of(NUMBER_OF_LINES_THRESHOLD);
+		return List.of(NUMBER_OF_LINES_THRESHOLD, PAGE_SIZE, PAGE, MEASUREMENT_MODE, PluginRunControl.TIME_BUDGET_INPUT,
+				PluginRunMetrics.TIMING_TABLE_INPUT);
 	}
 
 	@Override
 	public PluginResult execute(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput) {
-		GraphDBFacade graphDBFacade = dbInterfaces.graphDBFacade();
+		// rendered again only after an ingest or import plugin wrote to the project; partial results are not kept
+		try (PluginRunControl run = PluginRunControl.start(projectId, getName(), userInput)) {
+			return PluginResultCache.shared().get(projectId, getName(), userInput,
+					() -> render(projectId, dbInterfaces, userInput, run), run::isComplete);
+		}
+	}
+
+	private PluginResult render(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput,
+			PluginRunControl run) {
+		PluginRunMetrics runMetrics = new PluginRunMetrics(getName());
+		GraphDBFacade graphDBFacade = runMetrics.instrument(GraphDBFacade.class, dbInterfaces.graphDBFacade());
 
 		int threshold;
 		try {
@@ -56,57 +87,56 @@ public class LongClassFinder implements PluginSova {
 		} catch (NumberFormatException e) {
 			threshold = 1000; // fallback default
 		}
+		int pageSize = Math.min(readPositiveInt(userInput, PAGE_SIZE, DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+		int page = readPositiveInt(userInput, PAGE, 1);
+		boolean scan = SCAN.equalsIgnoreCase(userInput.properties().getOrDefault(MEASUREMENT_MODE, "parse").trim());
 
-		List<GraphNode> entities = graphDBFacade.findNodes("Entity", Map.of("projectId", projectId));
+		// the scan needs the sources, a parse reads the metrics kept in the shared snapshot of the project,
+		// which only parses the sources of entities ingested without stored metrics
+		List<GraphNode> entities = scan ?
+				runMetrics.call(PluginRunMetrics.READ,
+						() -> graphDBFacade.findNodes("Entity", Map.of("projectId", projectId))) :
+				List.of();
+		ProjectSnapshot snapshot = scan ? null :
+				ProjectSnapshotCache.shared().get(projectId, graphDBFacade, runMetrics, run);
+		int entityCount = scan ? entities.size() : snapshot.entityCount();
 
-		List<Map<String, Object>> longClasses = new ArrayList<>();
+		// only the classes up to the end of the requested page are ranked
+		LongClassRanking ranking = new LongClassRanking((int) Math.min((long) page * pageSize, Integer.MAX_VALUE));
 		int totalClasses = 0;
 		int longClassCount = 0;
 
-		for (GraphNode entity : entities) {
-			String content = entity.getProperties().getOrDefault("content", "").toString();
-			if (content.isEmpty()) {
+		run.begin(scan ? "scan" : "measure", entityCount);
+		for (int i = 0; i < entityCount; i++) {
+			if (run.shouldStop()) {
+				break;
+			}
+			run.advance();
+			LongClass measured = scan ? scanClass(entities.get(i), runMetrics) : measuredClass(snapshot, i);
+			if (measured == null) {
 				continue;
 			}
 
-			try {
-				CompilationUnit unit = StaticJavaParser.parse(content);
-
-				for (var type : unit.getTypes()) {
-					if (type instanceof ClassOrInterfaceDeclaration) {
-						totalClasses++;
-						int lineCount = countLines(content);
-
-						if (lineCount > threshold) {
-							longClassCount++;
-
-							String packageName = unit.getPackageDeclaration()
-								.map(NodeWithName::getNameAsString)
-								.orElse("(root package)");
-
-							Map<String, Object> classInfo = new HashMap<>();
-							classInfo.put("name", type.getNameAsString());
-							classInfo.put("packageName", packageName);
-							classInfo.put("lineCount", lineCount);
-							classInfo.put("fullName", packageName + "." + type.getNameAsString());
-
-							longClasses.add(classInfo);
-						}
-					}
+			totalClasses++;
+			if (measured.lineCount() > threshold) {
+				longClassCount++;
+				if (ranking.accepts(measured.lineCount())) {
+					ranking.offer(measured);
 				}
-			} catch (Exception e) {
-				System.err.println("Error parsing entity " + entity.getId() + ": " + e.getMessage());
 			}
 		}
 
-		// Sort long classes by line count (descending)
-		longClasses.sort((a, b) -> Integer.compare(
-			(Integer) b.get("lineCount"),
-			(Integer) a.get("lineCount")
-		));
+		PhaseTimer renderTimer = runMetrics.start(PluginRunMetrics.RENDER);
 
-		// Create HTML table for long classes
-		StringBuilder tableHtml = new StringBuilder();
+		// longest first; everything before the requested page is skipped
+		List<LongClass> ranked = ranking.drainLongestFirst();
+		List<LongClass> pageClasses = ranked.subList((int) Math.min((long) (page - 1) * pageSize, ranked.size()), ranked.size());
+		int pageCount = (longClassCount + pageSize - 1) / pageSize;
+
+		// Create HTML table for long classes; the result carries the page as one string, so it cannot be
+		// streamed, but paging bounds it to the requested rows and it is sized for them up front
+		StringBuilder tableHtml = new StringBuilder(
+				PAGE_HTML_CHARS + pageClasses.size() * (scan ? SCAN_ROW_HTML_CHARS : ROW_HTML_CHARS));
 		tableHtml.append("<div style='font-family: Arial, sans-serif;'>");
 		tableHtml.append("<h2 style='color: #333; margin-bottom: 20px;'>Long Class Analysis Results</h2>");
 		tableHtml.append("<div style='background: #f0f0f0; padding: 15px; border-radius: 5px; margin-bottom: 20px;'>");
@@ -121,40 +151,65 @@ public class LongClassFinder implements PluginSova {
 				.append(String.format("%.1f%%", percentage))
 				.append("</strong> of all classes in the project</p>");
 		}
+		if (!run.isComplete()) {
+			tableHtml.append("<p style='margin: 5px 0; color: #d32f2f;'>").append(run.describeStop()).append("</p>");
+		}
 		tableHtml.append("</div>");
 
-		if (!longClasses.isEmpty()) {
+		if (!pageClasses.isEmpty()) {
+			int first = (page - 1) * pageSize + 1;
 			tableHtml.append("<h3 style='color: #333; margin-bottom: 15px;'>Classes with more than ")
 				.append(threshold).append(" lines:</h3>");
+			tableHtml.append("<p style='margin: 5px 0 15px; color: #666;'>Showing ")
+				.append(first).append("-").append(first + pageClasses.size() - 1)
+				.append(" of ").append(longClassCount)
+				.append(" (page ").append(page).append(" of ").append(pageCount).append(")</p>");
 			tableHtml.append("<table style='width: 100%; border-collapse: collapse; box-shadow: 0 2px 4px rgba(0,0,0,0.1);'>");
 			tableHtml.append("<thead>");
 			tableHtml.append("<tr style='background-color: #4CAF50; color: white;'>");
 			tableHtml.append("<th style='padding: 12px; text-align: left; border: 1px solid #ddd;'>Class Name</th>");
 			tableHtml.append("<th style='padding: 12px; text-align: left; border: 1px solid #ddd;'>Package</th>");
 			tableHtml.append("<th style='padding: 12px; text-align: right; border: 1px solid #ddd;'>Lines of Code</th>");
+			if (scan) {
+				tableHtml.append("<th style='padding: 12px; text-align: right; border: 1px solid #ddd;'>Code Lines</th>");
+				tableHtml.append("<th style='padding: 12px; text-align: right; border: 1px solid #ddd;'>Comment Lines</th>");
+			}
 			tableHtml.append("</tr>");
 			tableHtml.append("</thead>");
 			tableHtml.append("<tbody>");
 
-			for (int i = 0; i < longClasses.size(); i++) {
-				Map<String, Object> classInfo = longClasses.get(i);
+			for (int i = 0; i < pageClasses.size(); i++) {
+				LongClass longClass = pageClasses.get(i);
 				String rowColor = i % 2 == 0 ? "#f9f9f9" : "#ffffff";
 
 				tableHtml.append("<tr style='background-color: ").append(rowColor).append(";'>");
 				tableHtml.append("<td style='padding: 10px; border: 1px solid #ddd; font-weight: bold;'>")
-					.append(classInfo.get("name")).append("</td>");
+					.append(longClass.name()).append("</td>");
 				tableHtml.append("<td style='padding: 10px; border: 1px solid #ddd; color: #666;'>")
-					.append(classInfo.get("packageName")).append("</td>");
+					.append(longClass.packageName()).append("</td>");
 				tableHtml.append("<td style='padding: 10px; border: 1px solid #ddd; text-align: right; font-weight: bold; color: #d32f2f;'>")
-					.append(classInfo.get("lineCount")).append("</td>");
+					.append(longClass.lineCount()).append("</td>");
+				if (scan) {
+					tableHtml.append("<td style='padding: 10px; border: 1px solid #ddd; text-align: right;'>")
+						.append(longClass.codeLines()).append("</td>");
+					tableHtml.append("<td style='padding: 10px; border: 1px solid #ddd; text-align: right; color: #666;'>")
+						.append(longClass.commentLines()).append("</td>");
+				}
 				tableHtml.append("</tr>");
 			}
 			tableHtml.append("</tbody>");
 			tableHtml.append("</table>");
+		} else if (longClassCount > 0) {
+			tableHtml.append("<p style='color: #666;'>Page ").append(page)
+				.append(" is past the last page (").append(pageCount).append(").</p>");
 		} else {
 			tableHtml.append("<p style='color: #4CAF50; font-size: 16px; font-weight: bold;'>")
 				.append("Great! No classes exceed ").append(threshold).append(" lines.</p>");
 		}
+		renderTimer.stop();
+		if (PluginRunMetrics.isTimingTableRequested(userInput)) {
+			tableHtml.append(runMetrics.toHtml());
+		}
 		tableHtml.append("</div>");
 
 		Map<String, Object> data = Map.of(
@@ -173,10 +228,56 @@ public class LongClassFinder implements PluginSova {
 		return new PluginResult(projectId, getName(), new GuiComponentData(FrontendComponentType.HTML, data, config));
 	}
 
-	private int countLines(String content) {
-		if (content == null || content.isEmpty()) {
-			return 0;
+	private static int readPositiveInt(UserInput userInput, String input, int defaultValue) {
+		try {
+			int value = Integer.parseInt(userInput.properties().getOrDefault(input, String.valueOf(defaultValue)).trim());
+			return value > 0 ? value : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue; // fallback default
+		}
+	}
+
+	/**
+	 * Metrics are stored on the entity at ingest time; those of projects ingested before that were
+	 * computed when the snapshot was loaded. Stored and parsed metrics measure the whole file.
+	 *
+	 * @return the class or interface, or {@code null} if the entity is neither or could not be measured
+	 */
+	private static LongClass measuredClass(ProjectSnapshot snapshot, int entity) {
+		if (!isClassOrInterface(snapshot.kind(entity))) {
+			return null;
 		}
-		return content.split("\r\n|\r|\n").length;
+		return new LongClass(snapshot.name(entity), displayedPackageName(snapshot.packageName(entity)),
+				snapshot.fileLineCount(entity), 0, 0);
+	}
+
+	/**
+	 * Measures the entity's own type declaration with the lexical scanner, which also splits its lines
+	 * into code, comment and blank lines and does not need a parse.
+	 */
+	private LongClass scanClass(GraphNode entity, PluginRunMetrics runMetrics) {
+		Map<String, Object> properties = entity.getProperties();
+		String content = properties.getOrDefault("content", "").toString();
+		String name = properties.getOrDefault("name", "").toString();
+		if (content.isEmpty()) {
+			return null;
+		}
+
+		ScannedSource source = runMetrics.call(PluginRunMetrics.PARSE, () -> SourceScanner.scan(content));
+		return source.types().stream()
+				.filter(type -> type.name().equals(name))
+				.findFirst()
+				.filter(type -> isClassOrInterface(type.kind()))
+				.map(type -> new LongClass(name, displayedPackageName(source.packageName()), type.lineCount(),
+						type.lines().code(), type.lines().comment()))
+				.orElse(null);
+	}
+
+	private static boolean isClassOrInterface(EntityKind kind) {
+		return kind == EntityKind.CLASS || kind == EntityKind.INTERFACE;
+	}
+
+	private static String displayedPackageName(String packageName) {
+		return packageName.isEmpty() ? "(root package)" : packageName;
 	}
 }
@@ -0,0 +1,127 @@
+package edu.mimuw.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the {@code capacity} longest classes offered so far in a min-heap over their line counts, so
+ * that ranking costs O(n log k) time and O(k) memory however many classes exceed the threshold.
+ * Classes with the same line count keep the order in which they were offered.
+ */
+final class LongClassRanking {
+
+	record LongClass(String name, String packageName, int lineCount, int codeLines, int commentLines) {
+	}
+
+	private final int capacity;
+
+	private int[] lineCounts = new int[16];
+
+	private int[] sequence = new int[16];
+
+	private LongClass[] classes = new LongClass[16];
+
+	private int size;
+
+	private int offered;
+
+	LongClassRanking(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Tells whether a class with the given line count would be kept, so that callers can skip building
+	 * the entry for one that would not.
+	 */
+	boolean accepts(int lineCount) {
+		return size < capacity || (capacity > 0 && lineCount > lineCounts[0]);
+	}
+
+	void offer(LongClass longClass) {
+		int order = offered++;
+		if (size < capacity) {
+			if (size == lineCounts.length) {
+				int grown = (int) Math.min(capacity, 2L * size);
+				lineCounts = Arrays.copyOf(lineCounts, grown);
+				sequence = Arrays.copyOf(sequence, grown);
+				classes = Arrays.copyOf(classes, grown);
+			}
+			set(size, longClass, order);
+			siftUp(size++);
+		} else if (accepts(longClass.lineCount())) {
+			set(0, longClass, order);
+			siftDown(0, size);
+		}
+	}
+
+	/**
+	 * Returns the kept classes, longest first, and empties the ranking.
+	 */
+	List<LongClass> drainLongestFirst() {
+		// heap sort: moving the shortest class to the back each time leaves the longest at the front
+		for (int last = size - 1; last > 0; last--) {
+			swap(0, last);
+			siftDown(0, last);
+		}
+		List<LongClass> result = new ArrayList<>(Arrays.asList(classes).subList(0, size));
+		Arrays.fill(classes, 0, size, null);
+		size = 0;
+		return result;
+	}
+
+	private void set(int index, LongClass longClass, int order) {
+		lineCounts[index] = longClass.lineCount();
+		sequence[index] = order;
+		classes[index] = longClass;
+	}
+
+	/**
+	 * The class ranked lower: shorter, or offered later when the lengths are equal.
+	 */
+	private boolean lower(int a, int b) {
+		return lineCounts[a] < lineCounts[b] || (lineCounts[a] == lineCounts[b] && sequence[a] > sequence[b]);
+	}
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (!lower(index, parent)) {
+				return;
+			}
+			swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index, int heapSize) {
+		while (true) {
+			int lowest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (left < heapSize && lower(left, lowest)) {
+				lowest = left;
+			}
+			if (right < heapSize && lower(right, lowest)) {
+				lowest = right;
+			}
+			if (lowest == index) {
+				return;
+			}
+			swap(index, lowest);
+			index = lowest;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int lineCount = lineCounts[a];
+		lineCounts[a] = lineCounts[b];
+		lineCounts[b] = lineCount;
+		int order = sequence[a];
+		sequence[a] = sequence[b];
+		sequence[b] = order;
+		LongClass longClass = classes[a];
+		classes[a] = classes[b];
+		classes[b] = longClass;
+	}
+}
@@ -0,0 +1,83 @@
+package edu.mimuw.plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory package tree of the entities of a project, built once per run so that references can be
+ * resolved without querying the database for every one of them. Classes are found by fully qualified
+ * name, by simple name within a package, and by the name of a member type they declare, each with a
+ * constant number of hash lookups.
+ */
+class PackageIndex {
+
+	private final Map<String, Integer> entitiesByName = new HashMap<>();
+
+	private final Map<String, Integer> occurrences = new HashMap<>();
+
+	private final Map<String, Map<String, Integer>> classesByPackage = new HashMap<>();
+
+	// fully qualified member type name, such as a.b.Outer.Inner, to the entity declaring it
+	private final Map<String, Integer> declaringEntities = new HashMap<>();
+
+	void add(String packageName, String simpleName, String fullClassName, int entity) {
+		if (fullClassName == null || fullClassName.isEmpty()) {
+			return;
+		}
+		entitiesByName.putIfAbsent(fullClassName, entity);
+		occurrences.merge(fullClassName, 1, Integer::sum);
+		classesByPackage.computeIfAbsent(packageName, name -> new HashMap<>()).putIfAbsent(simpleName, entity);
+	}
+
+	void addMemberType(String fullClassName, String memberTypeName, int entity) {
+		declaringEntities.putIfAbsent(fullClassName + "." + memberTypeName, entity);
+	}
+
+	void reportAmbiguousNames() {
+		occurrences.forEach((name, count) -> {
+			if (count > 1) {
+				System.out.println("Warning: Found " + count + " entities for class: " + name
+						+ ". Using the first one.");
+			}
+		});
+	}
+
+	/**
+	 * @return position of the entity with the given name, or {@code -1} if there is none
+	 */
+	int find(String fullClassName) {
+		return entitiesByName.getOrDefault(fullClassName, -1);
+	}
+
+	/**
+	 * Finds a class, or the class declaring a member type, by its fully qualified name.
+	 *
+	 * @return position of the entity, or {@code -1} if there is none
+	 */
+	int findType(String fullName) {
+		Integer entity = entitiesByName.get(fullName);
+		if (entity == null) {
+			entity = declaringEntities.get(fullName);
+		}
+		return entity != null ? entity : -1;
+	}
+
+	/**
+	 * @return position of the class with the given simple name in the package, or {@code -1} if there is none
+	 */
+	int findInPackage(String packageName, String simpleName) {
+		Map<String, Integer> classes = classesByPackage.get(packageName);
+		if (classes == null) {
+			return -1;
+		}
+		return classes.getOrDefault(simpleName, -1);
+	}
+
+	boolean isPackage(String packageName) {
+		return classesByPackage.containsKey(packageName);
+	}
+
+	int size() {
+		return entitiesByName.size();
+	}
+}
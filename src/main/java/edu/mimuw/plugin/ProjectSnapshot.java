@@ -0,0 +1,334 @@
+package edu.mimuw.plugin;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.summary.EntityMetrics;
+import edu.mimuw.plugin.summary.SourceSummary;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
+import edu.mimuw.sovaide.domain.graph.GraphNode;
+import edu.mimuw.sovaide.domain.model.EntityKind;
+
+/**
+ * Read-only, columnar copy of what the output plugins read about the entities of a project: names,
+ * size metrics and the resolved import graph. Entities are addressed by position, every property is
+ * held in an array indexed by it, strings that repeat such as package names are stored once, and
+ * imports are a {@link CsrGraph}. Sources and property maps are not kept, so a snapshot takes a small
+ * fraction of the memory of the nodes it was built from.
+ * <p>
+ * Names and metrics are copied when the snapshot is loaded, the imports are only resolved when a plugin
+ * first asks for them through {@link #withImports}, as that parses every source. Nothing else is changed
+ * after construction, so a snapshot can be shared by any number of threads. Snapshots are loaded and
+ * shared through {@link ProjectSnapshotCache}.
+ */
+final class ProjectSnapshot {
+
+	private static final byte UNMEASURED = -1;
+
+	private static final EntityKind[] KINDS = EntityKind.values();
+
+	private final String[] ids;
+
+	private final String[] names;
+
+	private final String[] packageNames;
+
+	// the names as stored on the nodes by ClassesImportRelationBuilder, empty if it has not run yet
+	private final String[] storedPackageNames;
+
+	private final String[] storedFullClassNames;
+
+	private final byte[] kinds;
+
+	private final int[] fileLineCounts;
+
+	private final int[] lineCounts;
+
+	private final int[] memberCounts;
+
+	private final int[] methodCounts;
+
+	private final int[] fieldCounts;
+
+	// false if the run loading the snapshot stopped before every entity was measured, set once by load
+	private boolean complete;
+
+	// resolved on first use by withImports, null until then
+	private volatile Imports imports;
+
+	private record Imports(String[] fullClassNames, BitSet parsed, CsrGraph graph) {
+	}
+
+	private ProjectSnapshot(int entityCount) {
+		this.ids = new String[entityCount];
+		this.names = new String[entityCount];
+		this.packageNames = new String[entityCount];
+		this.storedPackageNames = new String[entityCount];
+		this.storedFullClassNames = new String[entityCount];
+		this.kinds = new byte[entityCount];
+		this.fileLineCounts = new int[entityCount];
+		this.lineCounts = new int[entityCount];
+		this.memberCounts = new int[entityCount];
+		this.methodCounts = new int[entityCount];
+		this.fieldCounts = new int[entityCount];
+		Arrays.fill(kinds, UNMEASURED);
+	}
+
+	private ProjectSnapshot(ProjectSnapshot snapshot, Imports imports) {
+		this.ids = snapshot.ids;
+		this.names = snapshot.names;
+		this.packageNames = snapshot.packageNames;
+		this.storedPackageNames = snapshot.storedPackageNames;
+		this.storedFullClassNames = snapshot.storedFullClassNames;
+		this.kinds = snapshot.kinds;
+		this.fileLineCounts = snapshot.fileLineCounts;
+		this.lineCounts = snapshot.lineCounts;
+		this.memberCounts = snapshot.memberCounts;
+		this.methodCounts = snapshot.methodCounts;
+		this.fieldCounts = snapshot.fieldCounts;
+		this.complete = false;
+		this.imports = imports;
+	}
+
+	/**
+	 * Builds the snapshot of the given entities, without their imports. Metrics stored at ingest time are
+	 * copied, so only the sources of entities ingested before that are parsed. Skeleton and full summaries
+	 * measure the same ranges, so the metrics do not depend on which of them was cached first. If the run
+	 * stops early, the remaining entities are left unmeasured and the snapshot is not {@link #isComplete()}.
+	 */
+	static ProjectSnapshot load(List<GraphNode> entities, SourceSummaryCache summaries, PluginRunMetrics metrics,
+			PluginRunControl run) {
+		ProjectSnapshot snapshot = new ProjectSnapshot(entities.size());
+
+		long start = System.nanoTime();
+		long parseNanos = 0;
+		Map<String, String> strings = new HashMap<>();
+		run.begin("load", entities.size());
+		for (int i = 0; i < entities.size(); i++) {
+			Map<String, Object> properties = entities.get(i).getProperties();
+			snapshot.ids[i] = String.valueOf(entities.get(i).getId());
+			snapshot.names[i] = properties.getOrDefault("name", "").toString();
+			snapshot.packageNames[i] = "";
+			snapshot.storedPackageNames[i] = intern(strings, properties.getOrDefault("packageName", "").toString());
+			snapshot.storedFullClassNames[i] = properties.getOrDefault("fullClassName", "").toString();
+			if (run.shouldStop()) {
+				continue;
+			}
+			run.advance();
+			long parseStart = System.nanoTime();
+			try {
+				snapshot.measure(i, properties, summaries, strings);
+			} catch (Exception e) {
+				metrics.addParseFailures(1);
+				System.err.println("Error parsing entity " + entities.get(i).getId() + ": " + e.getMessage());
+			}
+			if (!EntityMetrics.isPresent(properties)) {
+				parseNanos += System.nanoTime() - parseStart;
+			}
+		}
+		snapshot.complete = run.isComplete();
+		metrics.record(PluginRunMetrics.PARSE, parseNanos);
+		metrics.record(PluginRunMetrics.ANALYZE, System.nanoTime() - start - parseNanos);
+		return snapshot;
+	}
+
+	/**
+	 * Returns this snapshot with its imports, resolving them from the given entities if no plugin asked
+	 * for them before. The entities are those of the project, read again so that their sources are not
+	 * kept with the snapshot, and are matched to it by id. If the run stops early, a copy holding the
+	 * imports resolved by then is returned, and this snapshot resolves them again on the next call.
+	 */
+	ProjectSnapshot withImports(Supplier<List<GraphNode>> entities, SourceSummaryCache summaries,
+			PluginRunMetrics metrics, PluginRunControl run) {
+		if (imports != null) {
+			return this;
+		}
+		// plugins asking while the imports are resolved wait for them instead of resolving them again
+		synchronized (this) {
+			if (imports != null) {
+				return this;
+			}
+			Imports resolved = resolveImports(entities.get(), summaries, metrics, run);
+			if (!run.isComplete()) {
+				return new ProjectSnapshot(this, resolved);
+			}
+			imports = resolved;
+			return this;
+		}
+	}
+
+	private Imports resolveImports(List<GraphNode> entities, SourceSummaryCache summaries,
+			PluginRunMetrics metrics, PluginRunControl run) {
+		ImportGraph graph = ImportGraph.build(entities, summaries, metrics, run);
+
+		long start = System.nanoTime();
+		Map<String, Integer> positions = new HashMap<>();
+		for (int i = 0; i < ids.length; i++) {
+			positions.put(ids[i], i);
+		}
+		// positions in the snapshot of the entities read, -1 for those added since it was loaded
+		int[] snapshotPositions = new int[entities.size()];
+		String[] fullClassNames = new String[ids.length];
+		Arrays.fill(fullClassNames, "");
+		BitSet parsed = new BitSet(ids.length);
+		for (int i = 0; i < entities.size(); i++) {
+			Integer position = positions.get(String.valueOf(entities.get(i).getId()));
+			snapshotPositions[i] = position != null ? position : -1;
+			if (position != null && graph.isParsed(i)) {
+				fullClassNames[position] = graph.fullClassName(i);
+				parsed.set(position);
+			}
+		}
+
+		int[] sources = new int[graph.edgeCount()];
+		int[] targets = new int[graph.edgeCount()];
+		int edgeCount = 0;
+		for (int edge = 0; edge < graph.edgeCount(); edge++) {
+			int source = snapshotPositions[graph.edgeSource(edge)];
+			int target = snapshotPositions[graph.edgeTarget(edge)];
+			if (source >= 0 && target >= 0) {
+				sources[edgeCount] = source;
+				targets[edgeCount++] = target;
+			}
+		}
+		Imports resolved = new Imports(fullClassNames, parsed, CsrGraph.of(ids.length, sources, targets, edgeCount));
+		metrics.record(PluginRunMetrics.ANALYZE, System.nanoTime() - start);
+		return resolved;
+	}
+
+	private static String intern(Map<String, String> strings, String value) {
+		String interned = strings.putIfAbsent(value, value);
+		return interned != null ? interned : value;
+	}
+
+	private void measure(int i, Map<String, Object> properties, SourceSummaryCache summaries,
+			Map<String, String> strings) {
+		Map<String, Object> metrics = properties;
+		if (!EntityMetrics.isPresent(properties)) {
+			SourceSummary summary = summaries.summarizeDeclarations(properties.getOrDefault("content", "").toString());
+			packageNames[i] = intern(strings, summary.packageName());
+			metrics = summary.types().stream()
+					.filter(type -> type.name().equals(names[i]))
+					.findFirst()
+					.map(type -> EntityMetrics.of(summary, type))
+					.orElse(null);
+			if (metrics == null) {
+				return;
+			}
+		}
+		if (metrics.get(EntityMetrics.PACKAGE_NAME) != null) {
+			packageNames[i] = intern(strings, metrics.get(EntityMetrics.PACKAGE_NAME).toString());
+		}
+		try {
+			kinds[i] = (byte) EntityKind.valueOf(String.valueOf(metrics.get(EntityMetrics.TYPE_KIND))).ordinal();
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		fileLineCounts[i] = EntityMetrics.intValue(metrics, EntityMetrics.FILE_LINE_COUNT);
+		lineCounts[i] = EntityMetrics.intValue(metrics, EntityMetrics.LINE_COUNT);
+		memberCounts[i] = EntityMetrics.intValue(metrics, EntityMetrics.MEMBER_COUNT);
+		methodCounts[i] = EntityMetrics.intValue(metrics, EntityMetrics.METHOD_COUNT);
+		fieldCounts[i] = EntityMetrics.intValue(metrics, EntityMetrics.FIELD_COUNT);
+	}
+
+	/**
+	 * @return whether every entity was measured, which is not the case if the loading run stopped early
+	 */
+	boolean isComplete() {
+		return complete;
+	}
+
+	int entityCount() {
+		return ids.length;
+	}
+
+	String id(int entity) {
+		return ids[entity];
+	}
+
+	String name(int entity) {
+		return names[entity];
+	}
+
+	/**
+	 * @return whether the source of the entity could be parsed, otherwise its full class name is empty;
+	 * known once the imports are resolved
+	 */
+	boolean isParsed(int entity) {
+		return resolvedImports().parsed().get(entity);
+	}
+
+	String packageName(int entity) {
+		return packageNames[entity];
+	}
+
+	/**
+	 * @return full name of the declared type, known once the imports are resolved
+	 */
+	String fullClassName(int entity) {
+		return resolvedImports().fullClassNames()[entity];
+	}
+
+	String storedPackageName(int entity) {
+		return storedPackageNames[entity];
+	}
+
+	String storedFullClassName(int entity) {
+		return storedFullClassNames[entity];
+	}
+
+	/**
+	 * @return whether size metrics are known for the entity; the metric methods return {@code 0} otherwise
+	 */
+	boolean isMeasured(int entity) {
+		return kinds[entity] != UNMEASURED;
+	}
+
+	/**
+	 * @return kind of the declared type, or {@code null} if the entity was not measured
+	 */
+	EntityKind kind(int entity) {
+		return isMeasured(entity) ? KINDS[kinds[entity]] : null;
+	}
+
+	int fileLineCount(int entity) {
+		return fileLineCounts[entity];
+	}
+
+	int lineCount(int entity) {
+		return lineCounts[entity];
+	}
+
+	int memberCount(int entity) {
+		return memberCounts[entity];
+	}
+
+	int methodCount(int entity) {
+		return methodCounts[entity];
+	}
+
+	int fieldCount(int entity) {
+		return fieldCounts[entity];
+	}
+
+	/**
+	 * @return the resolved imports between entities, by position
+	 */
+	CsrGraph imports() {
+		return resolvedImports().graph();
+	}
+
+	private Imports resolvedImports() {
+		Imports resolved = imports;
+		if (resolved == null) {
+			throw new IllegalStateException("Imports of the snapshot are not resolved, see withImports");
+		}
+		return resolved;
+	}
+}
@@ -0,0 +1,149 @@
+package edu.mimuw.plugin;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import edu.mimuw.plugin.cache.PluginResultCache;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
+import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
+import edu.mimuw.sovaide.domain.graph.GraphNode;
+
+/**
+ * {@link ProjectSnapshot Snapshots} of projects, shared by all output plugins. A snapshot is loaded once
+ * per {@link PluginResultCache#revision(String) revision} of its project: plugins that write to a project
+ * invalidate it, and the next plugin that asks for the project loads it again. Plugins asking while it
+ * loads wait for that load instead of scanning the database themselves. A snapshot whose load was stopped
+ * early by the run of its plugin is only returned to that plugin, the next one loads it again.
+ * <p>
+ * Like results, snapshots expire after a while, as changes made outside of these plugins are not seen.
+ * The number of projects kept and their lifetime can be set with the {@value #MAX_PROJECTS_PROPERTY}
+ * and {@value #TTL_SECONDS_PROPERTY} system properties.
+ */
+public class ProjectSnapshotCache {
+
+	public static final String MAX_PROJECTS_PROPERTY = "sova.snapshot.max-projects";
+
+	public static final String TTL_SECONDS_PROPERTY = "sova.snapshot.ttl-seconds";
+
+	private static final ProjectSnapshotCache SHARED = new ProjectSnapshotCache(
+			Integer.getInteger(MAX_PROJECTS_PROPERTY, 8),
+			Duration.ofSeconds(Long.getLong(TTL_SECONDS_PROPERTY, 600)));
+
+	private record Entry(long revision, long expiresAt, FutureTask<ProjectSnapshot> snapshot) {
+	}
+
+	private final long ttlNanos;
+
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * @param maxProjects number of projects whose snapshots are kept
+	 * @param ttl         how long a snapshot is used before it is loaded again
+	 */
+	public ProjectSnapshotCache(int maxProjects, Duration ttl) {
+		this.ttlNanos = ttl.toNanos();
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxProjects;
+			}
+		};
+	}
+
+	public static ProjectSnapshotCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the snapshot of the current revision of the project, with the names and metrics of its
+	 * entities but not their imports, loading it on this thread if there is none. Time spent loading is
+	 * recorded in the given metrics, and the load stops early if the given run does.
+	 */
+	ProjectSnapshot get(String projectId, GraphDBFacade graphDBFacade, PluginRunMetrics metrics,
+			PluginRunControl run) {
+		while (true) {
+			long revision = PluginResultCache.shared().revision(projectId);
+			Entry entry;
+			boolean load = false;
+			synchronized (this) {
+				entry = entries.get(projectId);
+				if (entry == null || entry.revision() != revision || entry.expiresAt() - System.nanoTime() <= 0) {
+					entry = new Entry(revision, System.nanoTime() + ttlNanos, new FutureTask<>(() ->
+							ProjectSnapshot.load(entities(projectId, graphDBFacade, metrics),
+									SourceSummaryCache.shared(), metrics, run)));
+					entries.put(projectId, entry);
+					load = true;
+				}
+			}
+
+			// loaded outside the lock, so that loading one project does not hold up the others
+			if (load) {
+				entry.snapshot().run();
+			}
+			ProjectSnapshot snapshot = await(projectId, entry);
+			if (snapshot.isComplete()) {
+				return snapshot;
+			}
+			synchronized (this) {
+				entries.remove(projectId, entry);
+			}
+			// the run that loaded it stopped early, which only that run is told about
+			if (load) {
+				return snapshot;
+			}
+		}
+	}
+
+	/**
+	 * Returns the snapshot of the current revision of the project like {@link #get}, with the imports
+	 * between its entities resolved. They are resolved once per snapshot, by the first plugin asking for
+	 * them, which reads the sources of the project again to parse them.
+	 */
+	ProjectSnapshot getWithImports(String projectId, GraphDBFacade graphDBFacade, PluginRunMetrics metrics,
+			PluginRunControl run) {
+		ProjectSnapshot snapshot = get(projectId, graphDBFacade, metrics, run);
+		if (!snapshot.isComplete()) {
+			// the run has already stopped, so the sources are not read again
+			return snapshot.withImports(List::of, SourceSummaryCache.shared(), metrics, run);
+		}
+		return snapshot.withImports(() -> entities(projectId, graphDBFacade, metrics), SourceSummaryCache.shared(),
+				metrics, run);
+	}
+
+	private static List<GraphNode> entities(String projectId, GraphDBFacade graphDBFacade, PluginRunMetrics metrics) {
+		return metrics.call(PluginRunMetrics.READ,
+				() -> graphDBFacade.findNodes("Entity", Map.of("projectId", projectId)));
+	}
+
+	private ProjectSnapshot await(String projectId, Entry entry) {
+		try {
+			return entry.snapshot().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading project " + projectId, e);
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				// a failed load is not kept, the next caller tries again
+				entries.remove(projectId, entry);
+			}
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IllegalStateException("Could not load project " + projectId, e.getCause());
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+}
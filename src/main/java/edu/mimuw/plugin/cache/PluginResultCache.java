@@ -0,0 +1,139 @@
+package edu.mimuw.plugin.cache;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.sovaide.domain.plugin.PluginResult;
+import edu.mimuw.sovaide.domain.plugin.UserInput;
+
+/**
+ * Results of output plugins, shared by all plugins, keyed by project, plugin, user input and the
+ * revision of the project. Plugins that write to a project {@link #invalidate(String) invalidate} it,
+ * which moves the project to a new revision, so a view is only rendered again once its data changed.
+ * <p>
+ * Changes made outside of these plugins are not seen, so entries also expire after a while. The number
+ * of entries and their lifetime can be set with the {@value #MAX_ENTRIES_PROPERTY} and
+ * {@value #TTL_SECONDS_PROPERTY} system properties.
+ */
+public class PluginResultCache {
+
+	public static final String MAX_ENTRIES_PROPERTY = "sova.result-cache.max-entries";
+
+	public static final String TTL_SECONDS_PROPERTY = "sova.result-cache.ttl-seconds";
+
+	private static final PluginResultCache SHARED = new PluginResultCache(
+			Integer.getInteger(MAX_ENTRIES_PROPERTY, 128),
+			Duration.ofSeconds(Long.getLong(TTL_SECONDS_PROPERTY, 600)));
+
+	private record Key(String projectId, String pluginName, String fileUrl, Map<String, String> inputs,
+			long revision) {
+	}
+
+	private record Entry(PluginResult result, long expiresAt) {
+	}
+
+	private final long ttlNanos;
+
+	private final Map<String, Long> revisions = new HashMap<>();
+
+	private final LinkedHashMap<Key, Entry> entries;
+
+	/**
+	 * @param maxEntries number of results kept, {@code 0} disables the cache
+	 * @param ttl        how long a result is served before it is rendered again
+	 */
+	public PluginResultCache(int maxEntries, Duration ttl) {
+		this.ttlNanos = ttl.toNanos();
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public static PluginResultCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the cached result of the plugin for this project and input, rendering it if there is none.
+	 * Runs that ask for the timing table are always rendered, as their timings describe the run itself.
+	 */
+	public PluginResult get(String projectId, String pluginName, UserInput userInput, Supplier<PluginResult> render) {
+		return get(projectId, pluginName, userInput, render, () -> true);
+	}
+
+	/**
+	 * Like {@link #get(String, String, UserInput, Supplier)}, but a rendered result is only stored if
+	 * {@code complete} holds once it is rendered, so that partial results of runs that stopped early are
+	 * not served again.
+	 */
+	public PluginResult get(String projectId, String pluginName, UserInput userInput, Supplier<PluginResult> render,
+			BooleanSupplier complete) {
+		if (PluginRunMetrics.isTimingTableRequested(userInput)) {
+			return render.get();
+		}
+
+		Key key;
+		synchronized (this) {
+			key = new Key(projectId, pluginName, userInput.fileUrl(),
+					Collections.unmodifiableMap(new HashMap<>(userInput.properties())),
+					revisions.getOrDefault(projectId, 0L));
+			Entry entry = entries.get(key);
+			if (entry != null && entry.expiresAt() - System.nanoTime() > 0) {
+				return entry.result();
+			}
+			entries.remove(key);
+		}
+
+		// rendered outside the lock; a result rendered while the project was invalidated may be stale and
+		// is not stored
+		PluginResult result = render.get();
+		if (!complete.getAsBoolean()) {
+			return result;
+		}
+		synchronized (this) {
+			if (revisions.getOrDefault(projectId, 0L) == key.revision()) {
+				entries.put(key, new Entry(result, System.nanoTime() + ttlNanos));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drops all results of the project. Called by plugins after they write to it.
+	 */
+	public synchronized void invalidate(String projectId) {
+		revisions.merge(projectId, 1L, Long::sum);
+		Iterator<Key> keys = entries.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().projectId().equals(projectId)) {
+				keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the revision of the project, which changes every time it is invalidated; other caches of
+	 *         project data key their entries by it
+	 */
+	public synchronized long revision(String projectId) {
+		return revisions.getOrDefault(projectId, 0L);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+}
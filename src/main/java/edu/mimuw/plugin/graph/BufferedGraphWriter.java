@@ -0,0 +1,146 @@
+package edu.mimuw.plugin.graph;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
+import edu.mimuw.sovaide.domain.graph.GraphNode;
+
+/**
+ * Write-behind buffer in front of a {@link GraphDBFacade}. Node property updates and edge creations
+ * are queued and sent to the database in batches. Repeated updates of the same node are merged into
+ * one, and an edge that is created twice is only written once.
+ * <p>
+ * Reads through this writer see the buffered writes: {@link #properties} overlays pending updates on
+ * a node's properties, while {@link #findNodes} and {@link #flushed} flush the buffer before querying.
+ * The writer must be {@link #close() closed}, or flushed, for the last batch to be written.
+ */
+public class BufferedGraphWriter implements AutoCloseable {
+
+	private final GraphDBFacade graphDBFacade;
+
+	private final int batchSize;
+
+	private final Map<String, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+
+	private final Set<PendingEdge> pendingEdges = new LinkedHashSet<>();
+
+	private int writesRequested;
+
+	private int writesIssued;
+
+	public BufferedGraphWriter(GraphDBFacade graphDBFacade, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+		}
+		this.graphDBFacade = graphDBFacade;
+		this.batchSize = batchSize;
+	}
+
+	public void updateNode(GraphNode node, Map<String, Object> properties) {
+		writesRequested++;
+		pendingUpdates.computeIfAbsent(String.valueOf(node.getId()), id -> new PendingUpdate(node, new HashMap<>()))
+				.properties().putAll(properties);
+		flushIfFull();
+	}
+
+	public void createEdge(GraphNode source, GraphNode target, String type, Map<String, Object> properties) {
+		writesRequested++;
+		pendingEdges.add(new PendingEdge(source, target, type, Map.copyOf(properties)));
+		flushIfFull();
+	}
+
+	/**
+	 * @return the node's properties with all buffered updates applied
+	 */
+	public Map<String, Object> properties(GraphNode node) {
+		PendingUpdate update = pendingUpdates.get(String.valueOf(node.getId()));
+		if (update == null) {
+			return node.getProperties();
+		}
+		Map<String, Object> properties = new HashMap<>(node.getProperties());
+		properties.putAll(update.properties());
+		return properties;
+	}
+
+	public List<GraphNode> findNodes(String label, Map<String, Object> properties) {
+		flush();
+		return graphDBFacade.findNodes(label, properties);
+	}
+
+	/**
+	 * Flushes the buffer and returns the underlying facade, for reads this writer does not wrap.
+	 */
+	public GraphDBFacade flushed() {
+		flush();
+		return graphDBFacade;
+	}
+
+	/**
+	 * Writes all buffered updates, nodes first so that edges are created between up to date nodes.
+	 */
+	public void flush() {
+		for (PendingUpdate update : pendingUpdates.values()) {
+			graphDBFacade.updateNode(update.node().getId(), update.properties());
+			writesIssued++;
+		}
+		pendingUpdates.clear();
+
+		for (PendingEdge edge : pendingEdges) {
+			graphDBFacade.createEdge(edge.source(), edge.target(), edge.type(), edge.properties());
+			writesIssued++;
+		}
+		pendingEdges.clear();
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+
+	/**
+	 * @return number of updates and edge creations requested from this writer
+	 */
+	public int writesRequested() {
+		return writesRequested;
+	}
+
+	/**
+	 * @return number of writes actually sent to the database, after merging
+	 */
+	public int writesIssued() {
+		return writesIssued;
+	}
+
+	private void flushIfFull() {
+		if (pendingUpdates.size() + pendingEdges.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	private record PendingUpdate(GraphNode node, Map<String, Object> properties) {
+	}
+
+	private record PendingEdge(GraphNode source, GraphNode target, String type, Map<String, Object> properties) {
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof PendingEdge edge
+					&& String.valueOf(source.getId()).equals(String.valueOf(edge.source.getId()))
+					&& String.valueOf(target.getId()).equals(String.valueOf(edge.target.getId()))
+					&& type.equals(edge.type)
+					&& properties.equals(edge.properties);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(String.valueOf(source.getId()), String.valueOf(target.getId()), type,
+					properties);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package edu.mimuw.plugin.instrument;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("edu.mimuw.plugin.DatabaseCall")
+@Label("Database Call")
+@Category({"SOVA", "Plugins"})
+@Description("A call from a plugin to the graph database or the project repository")
+class DatabaseCallEvent extends Event {
+
+	@Label("Plugin")
+	String plugin;
+
+	@Label("Interface")
+	String target;
+
+	@Label("Method")
+	String method;
+}
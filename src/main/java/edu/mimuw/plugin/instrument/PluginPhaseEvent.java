@@ -0,0 +1,20 @@
+package edu.mimuw.plugin.instrument;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("edu.mimuw.plugin.PluginPhase")
+@Label("Plugin Phase")
+@Category({"SOVA", "Plugins"})
+@Description("A timed phase of a plugin run")
+class PluginPhaseEvent extends Event {
+
+	@Label("Plugin")
+	String plugin;
+
+	@Label("Phase")
+	String phase;
+}
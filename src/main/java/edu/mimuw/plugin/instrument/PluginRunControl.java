@@ -0,0 +1,246 @@
+package edu.mimuw.plugin.instrument;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.mimuw.sovaide.domain.plugin.UserInput;
+
+/**
+ * Progress, time budget and cancellation of a single plugin run. Plugins report the work they are
+ * about to do with {@link #begin(String, long)}, count it off with {@link #advance()} and check
+ * {@link #shouldStop()} in their loops; once it returns {@code true} they stop and return what they
+ * have so far, marked as partial.
+ * <p>
+ * A run stops when its time budget, set through {@value #TIME_BUDGET_INPUT}, is used up, when it is
+ * {@link #cancel(String, String) cancelled} by project and plugin name, or when its thread is
+ * interrupted. While a run is in progress, its progress is passed to the {@link ProgressListener} at
+ * most once per {@value #REPORT_INTERVAL_PROPERTY} milliseconds, by default once a second.
+ * <p>
+ * All methods are thread-safe, so parallel workers may share a run.
+ */
+public final class PluginRunControl implements AutoCloseable {
+
+	/** User input through which plugins let users limit how long a run may take. */
+	public static final String TIME_BUDGET_INPUT = "Time budget in seconds (0 for none)";
+
+	public static final String REPORT_INTERVAL_PROPERTY = "sova.progress.interval-ms";
+
+	private static final long REPORT_INTERVAL_NANOS =
+			TimeUnit.MILLISECONDS.toNanos(Long.getLong(REPORT_INTERVAL_PROPERTY, 1000));
+
+	private static final Set<PluginRunControl> ACTIVE = ConcurrentHashMap.newKeySet();
+
+	private static volatile ProgressListener listener = progress -> System.out.println(progress);
+
+	public enum StopReason {
+		CANCELLED, TIMED_OUT
+	}
+
+	/**
+	 * @param phase        the work being done, as named by the plugin
+	 * @param processed    units of work done in the phase, such as entities or archive entries
+	 * @param total        units of work in the phase, {@code 0} if unknown
+	 * @param elapsedNanos time since the phase started
+	 */
+	public record Progress(String projectId, String pluginName, String phase, long processed, long total,
+			long elapsedNanos) {
+
+		public double perSecond() {
+			return elapsedNanos > 0 ? processed * 1e9 / elapsedNanos : 0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			text.append(pluginName).append(" [project ").append(projectId).append("] ").append(phase).append(": ")
+					.append(processed);
+			if (total > 0) {
+				text.append("/").append(total)
+						.append(String.format(Locale.ROOT, " (%.1f%%)", processed * 100.0 / total));
+			}
+			text.append(String.format(Locale.ROOT, ", %.1f/s, %.1f s", perSecond(), elapsedNanos / 1e9));
+			return text.toString();
+		}
+	}
+
+	public interface ProgressListener {
+
+		void onProgress(Progress progress);
+	}
+
+	private final String projectId;
+
+	private final String pluginName;
+
+	private final long startNanos = System.nanoTime();
+
+	// 0 means no budget
+	private final long budgetNanos;
+
+	private final boolean registered;
+
+	private final AtomicLong processed = new AtomicLong();
+
+	private final AtomicLong lastReportNanos = new AtomicLong(startNanos);
+
+	private volatile String phase = "";
+
+	private volatile long total;
+
+	private volatile long phaseStartNanos = startNanos;
+
+	private volatile boolean cancelled;
+
+	private volatile StopReason stopReason;
+
+	private PluginRunControl(String projectId, String pluginName, long budgetNanos, boolean registered) {
+		this.projectId = projectId;
+		this.pluginName = pluginName;
+		this.budgetNanos = budgetNanos;
+		this.registered = registered;
+	}
+
+	/**
+	 * Starts a run limited by the time budget in the user input, if any. The run can be cancelled until
+	 * it is closed.
+	 */
+	public static PluginRunControl start(String projectId, String pluginName, UserInput userInput) {
+		long budgetSeconds;
+		try {
+			budgetSeconds = Long.parseLong(userInput.properties().getOrDefault(TIME_BUDGET_INPUT, "0").trim());
+		} catch (NumberFormatException e) {
+			budgetSeconds = 0; // fallback default
+		}
+		PluginRunControl run = new PluginRunControl(projectId, pluginName,
+				budgetSeconds > 0 ? TimeUnit.SECONDS.toNanos(budgetSeconds) : 0, true);
+		ACTIVE.add(run);
+		return run;
+	}
+
+	/**
+	 * A run that is never stopped and reports no progress, for callers that do not control their runs.
+	 */
+	public static PluginRunControl unbounded() {
+		return new PluginRunControl("", "", 0, false);
+	}
+
+	/**
+	 * Cancels the runs of the plugin on the project that are in progress.
+	 *
+	 * @return number of runs cancelled
+	 */
+	public static int cancel(String projectId, String pluginName) {
+		int count = 0;
+		for (PluginRunControl run : ACTIVE) {
+			if (run.projectId.equals(projectId) && run.pluginName.equals(pluginName)) {
+				run.cancel();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return progress of all runs in progress
+	 */
+	public static List<Progress> activeRuns() {
+		return ACTIVE.stream().map(PluginRunControl::progress).toList();
+	}
+
+	public static void setProgressListener(ProgressListener progressListener) {
+		listener = progressListener;
+	}
+
+	/**
+	 * Starts a new phase of the run, with {@code total} units of work to do.
+	 */
+	public void begin(String phase, long total) {
+		this.phase = phase;
+		this.total = total;
+		this.phaseStartNanos = System.nanoTime();
+		processed.set(0);
+	}
+
+	public void advance() {
+		advance(1);
+	}
+
+	public void advance(long units) {
+		processed.addAndGet(units);
+		if (!registered) {
+			return;
+		}
+		long now = System.nanoTime();
+		long last = lastReportNanos.get();
+		if (now - last >= REPORT_INTERVAL_NANOS && lastReportNanos.compareAndSet(last, now)) {
+			listener.onProgress(progress());
+		}
+	}
+
+	/**
+	 * Tells whether the run has to stop. Once it returns {@code true} it always does.
+	 */
+	public boolean shouldStop() {
+		if (stopReason != null) {
+			return true;
+		}
+		if (cancelled || Thread.currentThread().isInterrupted()) {
+			stopReason = StopReason.CANCELLED;
+		} else if (budgetNanos > 0 && System.nanoTime() - startNanos > budgetNanos) {
+			stopReason = StopReason.TIMED_OUT;
+		}
+		return stopReason != null;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return why the run stopped early, or {@code null} if it has not
+	 */
+	public StopReason stopReason() {
+		return stopReason;
+	}
+
+	public boolean isComplete() {
+		return stopReason == null;
+	}
+
+	public Progress progress() {
+		return new Progress(projectId, pluginName, phase, processed.get(), total,
+				System.nanoTime() - phaseStartNanos);
+	}
+
+	/**
+	 * Describes why and where the run stopped, for the result of a run that is not complete.
+	 */
+	public String describeStop() {
+		if (stopReason == null) {
+			return "";
+		}
+		String reason = stopReason == StopReason.TIMED_OUT ?
+				"the time budget of " + TimeUnit.NANOSECONDS.toSeconds(budgetNanos) + " s was used up" :
+				"it was cancelled";
+		Progress progress = progress();
+		String where = progress.total() > 0 ?
+				progress.processed() + " of " + progress.total() :
+				String.valueOf(progress.processed());
+		return "The run stopped early because " + reason + ", after " + where + " in the " + progress.phase()
+				+ " phase. The results are partial.";
+	}
+
+	/**
+	 * Ends the run: it can no longer be cancelled, and its final progress is reported.
+	 */
+	@Override
+	public void close() {
+		if (registered && ACTIVE.remove(this) && !phase.isEmpty()) {
+			listener.onProgress(progress());
+		}
+	}
+}
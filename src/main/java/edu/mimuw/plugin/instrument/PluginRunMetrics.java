@@ -0,0 +1,257 @@
+package edu.mimuw.plugin.instrument;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import edu.mimuw.sovaide.domain.plugin.UserInput;
+
+/**
+ * Records where the time of a single plugin run goes: wall time per phase, the number and latency of
+ * database calls, bytes processed and parse failures. Phases and database calls are also emitted as
+ * JFR events, so they show up in flight recordings of production servers.
+ * <p>
+ * All methods are thread-safe. Time recorded for the same phase from several threads is summed.
+ */
+public class PluginRunMetrics {
+
+	public static final String READ = "read";
+
+	public static final String PARSE = "parse";
+
+	public static final String RESOLVE = "resolve";
+
+	public static final String ANALYZE = "analyze";
+
+	public static final String PERSIST = "persist";
+
+	public static final String RENDER = "render";
+
+	/** User input through which plugins let users ask for the timing table in their result. */
+	public static final String TIMING_TABLE_INPUT = "Include timing table (true/false)";
+
+	private final String pluginName;
+
+	private final long startNanos = System.nanoTime();
+
+	private final Map<String, LongAdder> phaseNanos = new LinkedHashMap<>();
+
+	private final Map<String, CallStats> databaseCalls = new LinkedHashMap<>();
+
+	private final LongAdder bytesProcessed = new LongAdder();
+
+	private final LongAdder parseFailures = new LongAdder();
+
+	public PluginRunMetrics(String pluginName) {
+		this.pluginName = pluginName;
+	}
+
+	public static boolean isTimingTableRequested(UserInput userInput) {
+		return Boolean.parseBoolean(userInput.properties().getOrDefault(TIMING_TABLE_INPUT, "false").trim());
+	}
+
+	/**
+	 * Starts timing a phase that ends when the returned timer is stopped.
+	 */
+	public PhaseTimer start(String phase) {
+		return new PhaseTimer(phase);
+	}
+
+	/**
+	 * Runs the given work as part of a phase and returns its result.
+	 */
+	public <T> T call(String phase, Supplier<T> work) {
+		PhaseTimer timer = start(phase);
+		try {
+			return work.get();
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Runs the given work as part of a phase.
+	 */
+	public void run(String phase, Runnable work) {
+		call(phase, () -> {
+			work.run();
+			return null;
+		});
+	}
+
+	public void record(String phase, long nanos) {
+		phaseAdder(phase).add(nanos);
+	}
+
+	public void addBytesProcessed(long bytes) {
+		bytesProcessed.add(bytes);
+	}
+
+	public void addParseFailures(int failures) {
+		parseFailures.add(failures);
+	}
+
+	public long bytesProcessed() {
+		return bytesProcessed.sum();
+	}
+
+	public long parseFailures() {
+		return parseFailures.sum();
+	}
+
+	public long databaseCallCount() {
+		synchronized (databaseCalls) {
+			return databaseCalls.values().stream().mapToLong(stats -> stats.count().sum()).sum();
+		}
+	}
+
+	/**
+	 * Wraps a database interface so that every call through it is counted and timed. Types that are not
+	 * interfaces are returned as they are.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T instrument(Class<T> type, T delegate) {
+		if (delegate == null || !type.isInterface()) {
+			return delegate;
+		}
+		String target = type.getSimpleName();
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+			if (method.getDeclaringClass() == Object.class) {
+				return method.invoke(delegate, args);
+			}
+			DatabaseCallEvent event = new DatabaseCallEvent();
+			event.begin();
+			long start = System.nanoTime();
+			try {
+				return method.invoke(delegate, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				callStats(target + "." + method.getName()).add(System.nanoTime() - start);
+				event.end();
+				if (event.shouldCommit()) {
+					event.plugin = pluginName;
+					event.target = target;
+					event.method = method.getName();
+					event.commit();
+				}
+			}
+		});
+	}
+
+	public String toText() {
+		StringBuilder text = new StringBuilder();
+		text.append("Timings\n");
+		text.append("=======\n");
+		snapshotPhases().forEach((phase, nanos) ->
+				text.append(String.format("%-28s %12.1f ms%n", phase, millis(nanos))));
+		text.append(String.format("%-28s %12.1f ms%n", "total (wall)", millis(System.nanoTime() - startNanos)));
+		snapshotCalls().forEach((call, stats) ->
+				text.append(String.format("%-28s %6d calls %12.1f ms%n", call, stats[0], millis(stats[1]))));
+		text.append("Bytes processed: ").append(bytesProcessed()).append("\n");
+		text.append("Parse failures: ").append(parseFailures()).append("\n");
+		return text.toString();
+	}
+
+	public String toHtml() {
+		StringBuilder html = new StringBuilder();
+		html.append("<h3 style='color: #333; margin: 20px 0 10px;'>Timings</h3>");
+		html.append("<table style='border-collapse: collapse; font-family: monospace;'>");
+		snapshotPhases().forEach((phase, nanos) -> appendHtmlRow(html, phase, String.format("%.1f ms", millis(nanos))));
+		appendHtmlRow(html, "total (wall)", String.format("%.1f ms", millis(System.nanoTime() - startNanos)));
+		snapshotCalls().forEach((call, stats) ->
+				appendHtmlRow(html, call, String.format("%d calls, %.1f ms", stats[0], millis(stats[1]))));
+		appendHtmlRow(html, "bytes processed", String.valueOf(bytesProcessed()));
+		appendHtmlRow(html, "parse failures", String.valueOf(parseFailures()));
+		html.append("</table>");
+		return html.toString();
+	}
+
+	public Map<String, Object> toMap() {
+		Map<String, Object> phases = new LinkedHashMap<>();
+		snapshotPhases().forEach((phase, nanos) -> phases.put(phase, millis(nanos)));
+		Map<String, Object> calls = new LinkedHashMap<>();
+		snapshotCalls().forEach((call, stats) -> calls.put(call, Map.of("count", stats[0], "ms", millis(stats[1]))));
+		return Map.of(
+				"phasesMs", phases,
+				"totalMs", millis(System.nanoTime() - startNanos),
+				"databaseCalls", calls,
+				"bytesProcessed", bytesProcessed(),
+				"parseFailures", parseFailures()
+		);
+	}
+
+	private void appendHtmlRow(StringBuilder html, String name, String value) {
+		html.append("<tr><td style='padding: 4px 12px; border: 1px solid #ddd;'>").append(name)
+				.append("</td><td style='padding: 4px 12px; border: 1px solid #ddd; text-align: right;'>")
+				.append(value).append("</td></tr>");
+	}
+
+	private LongAdder phaseAdder(String phase) {
+		synchronized (phaseNanos) {
+			return phaseNanos.computeIfAbsent(phase, key -> new LongAdder());
+		}
+	}
+
+	private CallStats callStats(String call) {
+		synchronized (databaseCalls) {
+			return databaseCalls.computeIfAbsent(call, key -> new CallStats(new LongAdder(), new LongAdder()));
+		}
+	}
+
+	private Map<String, Long> snapshotPhases() {
+		Map<String, Long> snapshot = new LinkedHashMap<>();
+		synchronized (phaseNanos) {
+			phaseNanos.forEach((phase, nanos) -> snapshot.put(phase, nanos.sum()));
+		}
+		return snapshot;
+	}
+
+	private Map<String, long[]> snapshotCalls() {
+		Map<String, long[]> snapshot = new LinkedHashMap<>();
+		synchronized (databaseCalls) {
+			databaseCalls.forEach((call, stats) -> snapshot.put(call, new long[] {stats.count().sum(), stats.nanos().sum()}));
+		}
+		return snapshot;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private record CallStats(LongAdder count, LongAdder nanos) {
+
+		void add(long elapsed) {
+			count.increment();
+			nanos.add(elapsed);
+		}
+	}
+
+	public final class PhaseTimer {
+
+		private final String phase;
+
+		private final long start = System.nanoTime();
+
+		private final PluginPhaseEvent event = new PluginPhaseEvent();
+
+		private PhaseTimer(String phase) {
+			this.phase = phase;
+			event.begin();
+		}
+
+		public void stop() {
+			record(phase, System.nanoTime() - start);
+			event.end();
+			if (event.shouldCommit()) {
+				event.plugin = pluginName;
+				event.phase = phase;
+				event.commit();
+			}
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An entry of one of the uploaded archives, together with the path its file is stored under.
+ *
+ * @param nestedClassCandidates for a class file, the class files of the archive that may hold classes nested
+ *                              in it, which are parsed together with it
+ * @param nestedClassCandidate  whether the entry is such a candidate of another class file, and is not parsed
+ *                              on its own
+ */
+record ArchiveEntry(JarFile jarFile, JarEntry entry, String path, List<ArchiveEntry> nestedClassCandidates,
+		boolean nestedClassCandidate) {
+}
@@ -0,0 +1,290 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reads the header and constant pool of a class file without building a bytecode model. Only the
+ * structures needed to find the class name, its supertypes and the classes it refers to are decoded,
+ * everything else in the constant pool is skipped by offset. Fields and methods are skipped too, only
+ * the class attributes that tell which class a nested class belongs to are read.
+ */
+class ClassFileScanner {
+
+	static final int ACC_INTERFACE = 0x0200;
+
+	static final int ACC_ANNOTATION = 0x2000;
+
+	static final int ACC_ENUM = 0x4000;
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	/**
+	 * @param name              binary name of the class, with dots as package separators
+	 * @param superName         binary name of the superclass, or {@code null} for {@code java.lang.Object}
+	 * @param interfaces        binary names of the directly implemented interfaces
+	 * @param referencedClasses binary names of all other classes the constant pool refers to
+	 * @param topLevelName      binary name of the top-level class the class is nested in, its own name if it
+	 *                          is not nested
+	 */
+	record ClassFileSummary(String name, int accessFlags, String superName, List<String> interfaces,
+			Set<String> referencedClasses, String topLevelName) {
+
+		boolean isNested() {
+			return !name.equals(topLevelName);
+		}
+
+		String packageName() {
+			int lastDot = name.lastIndexOf('.');
+			return lastDot < 0 ? "" : name.substring(0, lastDot);
+		}
+
+		String simpleName() {
+			return name.substring(name.lastIndexOf('.') + 1);
+		}
+	}
+
+	ClassFileSummary scan(byte[] bytes) {
+		return scan(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Scans the class file from the start of the buffer, which may also be a direct buffer.
+	 */
+	ClassFileSummary scan(ByteBuffer bytes) {
+		try {
+			return scanBuffer(bytes.slice());
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated class file", e);
+		}
+	}
+
+	private ClassFileSummary scanBuffer(ByteBuffer buffer) {
+		if (buffer.getInt() != MAGIC) {
+			throw new IllegalArgumentException("Not a class file");
+		}
+		buffer.getShort(); // minor version
+		buffer.getShort(); // major version
+
+		int poolSize = Short.toUnsignedInt(buffer.getShort());
+		byte[] tags = new byte[poolSize];
+		int[] offsets = new int[poolSize];
+		for (int i = 1; i < poolSize; i++) {
+			int tag = Byte.toUnsignedInt(buffer.get());
+			tags[i] = (byte) tag;
+			offsets[i] = buffer.position();
+			switch (tag) {
+				case CONSTANT_UTF8 -> {
+					int length = Short.toUnsignedInt(buffer.getShort());
+					buffer.position(buffer.position() + length);
+				}
+				case CONSTANT_CLASS, CONSTANT_STRING, CONSTANT_METHOD_TYPE, CONSTANT_MODULE, CONSTANT_PACKAGE ->
+						buffer.position(buffer.position() + 2);
+				case CONSTANT_METHOD_HANDLE -> buffer.position(buffer.position() + 3);
+				case CONSTANT_INTEGER, CONSTANT_FLOAT, CONSTANT_FIELDREF, CONSTANT_METHODREF,
+						CONSTANT_INTERFACE_METHODREF, CONSTANT_NAME_AND_TYPE, CONSTANT_DYNAMIC,
+						CONSTANT_INVOKE_DYNAMIC -> buffer.position(buffer.position() + 4);
+				case CONSTANT_LONG, CONSTANT_DOUBLE -> {
+					buffer.position(buffer.position() + 8);
+					i++; // eight byte constants take up two entries
+				}
+				default -> throw new IllegalArgumentException("Unknown constant pool tag " + tag + " at entry " + i);
+			}
+		}
+
+		int accessFlags = Short.toUnsignedInt(buffer.getShort());
+		String name = className(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort()));
+		int superIndex = Short.toUnsignedInt(buffer.getShort());
+		String superName = superIndex == 0 ? null : className(buffer, tags, offsets, superIndex);
+		if ("java.lang.Object".equals(superName)) {
+			superName = null;
+		}
+		int interfaceCount = Short.toUnsignedInt(buffer.getShort());
+		List<String> interfaces = new ArrayList<>(interfaceCount);
+		for (int i = 0; i < interfaceCount; i++) {
+			interfaces.add(className(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort())));
+		}
+
+		Set<String> referenced = new TreeSet<>();
+		for (int i = 1; i < poolSize; i++) {
+			switch (tags[i]) {
+				case CONSTANT_CLASS -> {
+					String internalName = utf8(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort(offsets[i])));
+					if (internalName.startsWith("[")) {
+						addDescriptorTypes(internalName, referenced);
+					} else {
+						referenced.add(internalName.replace('/', '.'));
+					}
+				}
+				case CONSTANT_NAME_AND_TYPE -> addDescriptorTypes(
+						utf8(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort(offsets[i] + 2))), referenced);
+				case CONSTANT_METHOD_TYPE -> addDescriptorTypes(
+						utf8(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort(offsets[i]))), referenced);
+				default -> {
+				}
+			}
+		}
+		referenced.remove(name);
+		referenced.remove("java.lang.Object");
+
+		skipMembers(buffer); // fields
+		skipMembers(buffer); // methods
+		String topLevelName = topLevelName(buffer, tags, offsets, name);
+
+		return new ClassFileSummary(name, accessFlags, superName, List.copyOf(interfaces), referenced, topLevelName);
+	}
+
+	private void skipMembers(ByteBuffer buffer) {
+		int count = Short.toUnsignedInt(buffer.getShort());
+		for (int i = 0; i < count; i++) {
+			buffer.position(buffer.position() + 6); // access flags, name and descriptor
+			skipAttributes(buffer, Short.toUnsignedInt(buffer.getShort()));
+		}
+	}
+
+	private void skipAttributes(ByteBuffer buffer, int count) {
+		for (int i = 0; i < count; i++) {
+			buffer.getShort(); // name
+			int length = buffer.getInt();
+			buffer.position(buffer.position() + length);
+		}
+	}
+
+	/**
+	 * Follows the enclosing classes recorded in the InnerClasses and EnclosingMethod attributes up to the
+	 * top-level class. A nested class lists all classes it is nested in, except for the classes enclosing
+	 * a local or anonymous class further out, whose names are then cut at their last {@code $}.
+	 */
+	private String topLevelName(ByteBuffer buffer, byte[] tags, int[] offsets, String name) {
+		Set<String> nested = new HashSet<>();
+		Map<String, String> outerClasses = new HashMap<>();
+		String enclosingClass = null;
+
+		int attributeCount = Short.toUnsignedInt(buffer.getShort());
+		for (int i = 0; i < attributeCount; i++) {
+			String attributeName = utf8(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort()));
+			int length = buffer.getInt();
+			int end = buffer.position() + length;
+			if (attributeName.equals("InnerClasses")) {
+				int classCount = Short.toUnsignedInt(buffer.getShort());
+				for (int j = 0; j < classCount; j++) {
+					String innerName = className(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort()));
+					int outerIndex = Short.toUnsignedInt(buffer.getShort());
+					buffer.getInt(); // simple name and access flags
+					nested.add(innerName);
+					if (outerIndex != 0) {
+						outerClasses.put(innerName, className(buffer, tags, offsets, outerIndex));
+					}
+				}
+			} else if (attributeName.equals("EnclosingMethod")) {
+				enclosingClass = className(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort()));
+			}
+			buffer.position(end);
+		}
+
+		String topLevelName = name;
+		Set<String> visited = new HashSet<>();
+		while (nested.contains(topLevelName) && visited.add(topLevelName)) {
+			String outer = outerClasses.get(topLevelName);
+			if (outer == null) {
+				outer = topLevelName.equals(name) && enclosingClass != null ?
+						enclosingClass :
+						enclosingName(topLevelName);
+			}
+			if (outer == null) {
+				break;
+			}
+			topLevelName = outer;
+		}
+		return topLevelName;
+	}
+
+	private static String enclosingName(String binaryName) {
+		int nested = binaryName.lastIndexOf('$');
+		return nested > binaryName.lastIndexOf('.') + 1 ? binaryName.substring(0, nested) : null;
+	}
+
+	private String className(ByteBuffer buffer, byte[] tags, int[] offsets, int index) {
+		checkTag(tags, index, CONSTANT_CLASS);
+		return utf8(buffer, tags, offsets, Short.toUnsignedInt(buffer.getShort(offsets[index]))).replace('/', '.');
+	}
+
+	private String utf8(ByteBuffer buffer, byte[] tags, int[] offsets, int index) {
+		checkTag(tags, index, CONSTANT_UTF8);
+		int offset = offsets[index];
+		int length = Short.toUnsignedInt(buffer.getShort(offset));
+		byte[] array = new byte[length];
+		buffer.get(offset + 2, array);
+		for (byte b : array) {
+			if (b <= 0) {
+				return modifiedUtf8(array, 0, length);
+			}
+		}
+		// class names are almost always plain ASCII, which needs no decoding
+		return new String(array, StandardCharsets.ISO_8859_1);
+	}
+
+	private void checkTag(byte[] tags, int index, int expected) {
+		if (index <= 0 || index >= tags.length || tags[index] != expected) {
+			throw new IllegalArgumentException("Constant pool entry " + index + " is not of type " + expected);
+		}
+	}
+
+	// class files store strings in the JVM's modified UTF-8, which the standard decoder does not accept
+	private static String modifiedUtf8(byte[] array, int start, int length) {
+		StringBuilder result = new StringBuilder(length);
+		int i = start;
+		int end = start + length;
+		while (i < end) {
+			int b = array[i++] & 0xFF;
+			if (b < 0x80) {
+				result.append((char) b);
+			} else if ((b & 0xE0) == 0xC0) {
+				result.append((char) (((b & 0x1F) << 6) | (array[i++] & 0x3F)));
+			} else {
+				int second = array[i++] & 0x3F;
+				int third = array[i++] & 0x3F;
+				result.append((char) (((b & 0x0F) << 12) | (second << 6) | third));
+			}
+		}
+		return result.toString();
+	}
+
+	private static void addDescriptorTypes(String descriptor, Set<String> referenced) {
+		int i = descriptor.indexOf('L');
+		while (i >= 0) {
+			int end = descriptor.indexOf(';', i);
+			if (end < 0) {
+				return;
+			}
+			referenced.add(descriptor.substring(i + 1, end).replace('/', '.'));
+			i = descriptor.indexOf('L', end);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.mimuw.plugin.jarparse.ClassFileScanner.ClassFileSummary;
+
+/**
+ * Renders a scanned class file as an empty Java declaration. The stub carries the package, the
+ * supertypes and an import for every referenced class, so the plugins that read entity sources treat
+ * classes ingested from bytecode the same way as the ones ingested from source files.
+ * <p>
+ * Nested, local and anonymous classes are compiled into class files of their own, but are part of
+ * their top-level class in a source, so their references are added to the stub of the top-level class.
+ * Classes of the same package are imported explicitly too, which is legal Java and lets the import
+ * resolution find them without relying on how the stub uses their names. Supertypes are written by
+ * their simple names, as a source would write them, unless that name is ambiguous. Records are written
+ * without their components, which the constant pool does not tell apart from other fields.
+ */
+final class ClassFileStub {
+
+	private ClassFileStub() {
+	}
+
+	/**
+	 * @param nestedClasses the classes nested in the class at any depth
+	 */
+	static String render(ClassFileSummary summary, List<ClassFileSummary> nestedClasses) {
+		StringBuilder stub = new StringBuilder();
+		String packageName = summary.packageName();
+		if (!packageName.isEmpty()) {
+			stub.append("package ").append(packageName).append(";\n\n");
+		}
+
+		Set<String> imports = new TreeSet<>();
+		addImports(summary, summary.name(), imports);
+		for (ClassFileSummary nested : nestedClasses) {
+			addImports(nested, summary.name(), imports);
+		}
+		imports.forEach(name -> stub.append("import ").append(name).append(";\n"));
+		if (!imports.isEmpty()) {
+			stub.append('\n');
+		}
+
+		int flags = summary.accessFlags();
+		List<String> extendsList = new ArrayList<>();
+		List<String> implementsList = new ArrayList<>();
+		String keyword;
+		if ((flags & ClassFileScanner.ACC_ANNOTATION) != 0) {
+			keyword = "@interface";
+		} else if ((flags & ClassFileScanner.ACC_INTERFACE) != 0) {
+			keyword = "interface";
+			summary.interfaces().forEach(name -> extendsList.add(typeName(name, summary, imports)));
+		} else if ((flags & ClassFileScanner.ACC_ENUM) != 0) {
+			keyword = "enum";
+			summary.interfaces().forEach(name -> implementsList.add(typeName(name, summary, imports)));
+		} else if (isRecord(summary)) {
+			// the Record supertype is implicit, a source cannot name it
+			keyword = "record";
+			summary.interfaces().forEach(name -> implementsList.add(typeName(name, summary, imports)));
+		} else {
+			keyword = "class";
+			if (summary.superName() != null) {
+				extendsList.add(typeName(summary.superName(), summary, imports));
+			}
+			summary.interfaces().forEach(name -> implementsList.add(typeName(name, summary, imports)));
+		}
+
+		stub.append("public ").append(keyword).append(' ').append(summary.simpleName());
+		if (keyword.equals("record")) {
+			stub.append("()");
+		}
+		if (!extendsList.isEmpty()) {
+			stub.append(" extends ").append(String.join(", ", extendsList));
+		}
+		if (!implementsList.isEmpty()) {
+			stub.append(" implements ").append(String.join(", ", implementsList));
+		}
+		stub.append(" {\n}\n");
+		return stub.toString();
+	}
+
+	static boolean isRecord(ClassFileSummary summary) {
+		return "java.lang.Record".equals(summary.superName());
+	}
+
+	/**
+	 * Nested and anonymous classes are not separate entities in source ingestion either, so only
+	 * top-level classes are rendered. Their names may contain {@code $} too.
+	 */
+	static boolean isTopLevel(ClassFileSummary summary) {
+		String simpleName = summary.simpleName();
+		return !summary.isNested() && !simpleName.equals("package-info") && !simpleName.equals("module-info");
+	}
+
+	private static void addImports(ClassFileSummary summary, String ownName, Set<String> imports) {
+		for (String referenced : summary.referencedClasses()) {
+			if (referenced.startsWith(ownName + "$")) {
+				continue; // nested in the class itself, whatever its own name contains
+			}
+			String importName = sourceName(referenced);
+			if (isImportable(importName, ownName)) {
+				imports.add(importName);
+			}
+		}
+	}
+
+	/**
+	 * Names a supertype the way a source would: by the simple name of its top-level class if that is
+	 * imported or from {@code java.lang} and no other import or the class itself has the same simple name,
+	 * followed by the names of the classes it is nested in.
+	 */
+	private static String typeName(String binaryName, ClassFileSummary summary, Set<String> imports) {
+		String topLevelName = sourceName(binaryName);
+		String nestedNames = binaryName.substring(topLevelName.length()).replace('$', '.');
+		String simpleName = topLevelName.substring(topLevelName.lastIndexOf('.') + 1);
+		boolean visible = imports.contains(topLevelName) || topLevelName.equals("java.lang." + simpleName);
+		boolean ambiguous = simpleName.equals(summary.simpleName()) || imports.stream()
+				.anyMatch(name -> !name.equals(topLevelName) && name.endsWith("." + simpleName));
+		return (visible && !ambiguous ? simpleName : topLevelName) + nestedNames;
+	}
+
+	private static String sourceName(String binaryName) {
+		int nested = binaryName.indexOf('$', binaryName.lastIndexOf('.') + 1);
+		return nested < 0 ? binaryName : binaryName.substring(0, nested);
+	}
+
+	// classes of the unnamed package cannot be imported
+	private static boolean isImportable(String name, String ownName) {
+		int lastDot = name.lastIndexOf('.');
+		if (lastDot < 0 || name.equals(ownName) || name.substring(0, lastDot).equals("java.lang")) {
+			return false;
+		}
+		for (String part : name.split("\\.")) {
+			if (part.isEmpty() || !Character.isJavaIdentifierStart(part.charAt(0))
+					|| !part.chars().allMatch(Character::isJavaIdentifierPart)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,36 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.mimuw.plugin.jarparse.EntryBufferPool.EntryBuffer;
+
+/**
+ * Content-addressed store for entry texts read during a single ingest. Identical entries, which are
+ * common in archives that bundle the same sources under several paths, are decoded once and share
+ * one {@link String} instance between all files and entities that refer to them. Entries are only
+ * decoded when no identical entry was decoded before.
+ * <p>
+ * Texts are only weakly referenced, so the store keeps none of them alive by itself: a text lives as
+ * long as the files and entities that refer to it, which the ingest holds until it ends.
+ */
+class ContentStore {
+
+	private final Map<String, WeakReference<String>> contents = new ConcurrentHashMap<>();
+
+	String store(EntryBuffer bytes) {
+		String hash = bytes.sha256();
+		String[] stored = new String[1];
+		contents.compute(hash, (key, reference) -> {
+			String existing = reference != null ? reference.get() : null;
+			if (existing != null) {
+				stored[0] = existing;
+				return reference;
+			}
+			stored[0] = bytes.decode();
+			return new WeakReference<>(stored[0]);
+		});
+		return stored[0];
+	}
+}
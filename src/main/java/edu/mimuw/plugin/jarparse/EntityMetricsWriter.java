@@ -0,0 +1,90 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.mimuw.plugin.graph.BufferedGraphWriter;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.summary.EntityMetrics;
+import edu.mimuw.plugin.summary.SourceSummary;
+import edu.mimuw.plugin.summary.SourceSummary.TypeSummary;
+import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
+import edu.mimuw.sovaide.domain.graph.GraphNode;
+
+/**
+ * Stores size metrics on the entity nodes of a freshly ingested project. The metrics are measured while
+ * parsing the archive, from the summaries the entities are built of, and only matched to the nodes once
+ * the project is saved, so no source is parsed again.
+ * <p>
+ * An entity node carries no path, and an entity has no properties of its own to put the metrics on
+ * before it is saved, so a node is recognised by its name and a fingerprint of its source: the length
+ * and hash of the text. The writer thus keeps no source alive while the archive is parsed. The facade
+ * has no call that returns some properties only, so writing still reads the entity nodes with their
+ * sources once, as the output plugins do.
+ * <p>
+ * Only the entities written by the run are measured. Entities of files an incremental run kept keep the
+ * metrics stored before, and entities left unmeasured are measured by the output plugins when they need it.
+ */
+class EntityMetricsWriter {
+
+	private static final int WRITE_BATCH_SIZE = 500;
+
+	private final GraphDBFacade graphDBFacade;
+
+	private final PluginRunControl run;
+
+	private final Map<MeasuredEntity, Map<String, Object>> measured = new ConcurrentHashMap<>();
+
+	EntityMetricsWriter(GraphDBFacade graphDBFacade, PluginRunControl run) {
+		this.graphDBFacade = graphDBFacade;
+		this.run = run;
+	}
+
+	/**
+	 * Records the metrics of an entity built from the given type, called from the parsing threads.
+	 *
+	 * @param content source the entity is stored with
+	 */
+	void measure(String content, SourceSummary summary, TypeSummary type) {
+		measured.put(MeasuredEntity.of(type.name(), content), EntityMetrics.of(summary, type));
+	}
+
+	/**
+	 * @return number of entities the metrics were stored for
+	 */
+	int write(String projectId) {
+		if (measured.isEmpty()) {
+			return 0;
+		}
+		List<GraphNode> entities = graphDBFacade.findNodes("Entity", Map.of("projectId", projectId));
+		int updated = 0;
+		BufferedGraphWriter writer = new BufferedGraphWriter(graphDBFacade, WRITE_BATCH_SIZE);
+		run.begin("measure", entities.size());
+		for (GraphNode entity : entities) {
+			if (run.shouldStop()) {
+				break;
+			}
+			run.advance();
+			Object name = entity.getProperties().get("name");
+			Object content = entity.getProperties().get("content");
+			if (name == null || content == null) {
+				continue;
+			}
+			Map<String, Object> metrics = measured.get(MeasuredEntity.of(name.toString(), content.toString()));
+			if (metrics != null) {
+				writer.updateNode(entity, metrics);
+				updated++;
+			}
+		}
+		writer.close();
+		return updated;
+	}
+
+	private record MeasuredEntity(String name, int contentLength, int contentHash) {
+
+		static MeasuredEntity of(String name, String content) {
+			return new MeasuredEntity(name, content.length(), content.hashCode());
+		}
+	}
+}
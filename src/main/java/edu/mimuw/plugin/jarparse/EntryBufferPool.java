@@ -0,0 +1,151 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * Off-heap buffers that the entries of archives are read into during a single ingest. A buffer is
+ * leased for one entry at a time and reused for the next, so reading an archive allocates no byte array
+ * per entry and the raw bytes never reach the Java heap; only entries stored as text are decoded into strings.
+ * <p>
+ * At most one buffer per parsing thread is in use at a time, which bounds the off-heap memory to the
+ * parallelism times the largest entry. Entries over {@value #MAX_DIRECT_CAPACITY} bytes are read into
+ * heap buffers that are not kept.
+ */
+class EntryBufferPool {
+
+	private static final int MIN_CAPACITY = 64 * 1024;
+
+	private static final int MAX_DIRECT_CAPACITY = 64 * 1024 * 1024;
+
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	private final Queue<EntryBuffer> free = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Reads the stream into a leased buffer and hands it to the reader. The stream is not closed, and the
+	 * buffer must not be used after the reader returns.
+	 *
+	 * @param sizeHint expected number of bytes, or {@code -1} if unknown
+	 */
+	<T> T read(InputStream is, long sizeHint, Function<EntryBuffer, T> reader) throws IOException {
+		EntryBuffer buffer = free.poll();
+		if (buffer == null) {
+			buffer = new EntryBuffer();
+		}
+		try {
+			buffer.fill(is, sizeHint);
+			return reader.apply(buffer);
+		} finally {
+			buffer.release();
+			free.add(buffer);
+		}
+	}
+
+	static final class EntryBuffer {
+
+		private final byte[] chunk = new byte[CHUNK_SIZE];
+
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		private final MessageDigest digest;
+
+		private ByteBuffer bytes;
+
+		private CharBuffer chars;
+
+		private EntryBuffer() {
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not available", e);
+			}
+		}
+
+		/**
+		 * @return the bytes of the entry, positioned at its start
+		 */
+		ByteBuffer bytes() {
+			return bytes.duplicate();
+		}
+
+		int size() {
+			return bytes.limit();
+		}
+
+		String sha256() {
+			digest.reset();
+			digest.update(bytes());
+			return HexFormat.of().formatHex(digest.digest());
+		}
+
+		/**
+		 * Decodes the entry as UTF-8, replacing malformed input like {@link String#String(byte[],
+		 * java.nio.charset.Charset)} does.
+		 */
+		String decode() {
+			// UTF-8 never needs more chars than bytes
+			if (chars == null || chars.capacity() < size()) {
+				chars = CharBuffer.allocate(Math.max(size(), MIN_CAPACITY));
+			}
+			chars.clear();
+			decoder.reset();
+			decoder.decode(bytes(), chars, true);
+			decoder.flush(chars);
+			return chars.flip().toString();
+		}
+
+		private void fill(InputStream is, long sizeHint) throws IOException {
+			ensureCapacity((int) Math.min(Math.max(sizeHint, MIN_CAPACITY), MAX_DIRECT_CAPACITY), 0);
+			bytes.clear();
+			int read;
+			while ((read = is.read(chunk)) > 0) {
+				if (bytes.remaining() < read) {
+					ensureCapacity(bytes.position() + read, bytes.position());
+				}
+				bytes.put(chunk, 0, read);
+			}
+			bytes.flip();
+		}
+
+		private void ensureCapacity(int capacity, int keep) {
+			if (bytes != null && bytes.capacity() >= capacity) {
+				return;
+			}
+			int newCapacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1);
+			if (newCapacity <= 0) {
+				newCapacity = capacity;
+			}
+			ByteBuffer grown = newCapacity <= MAX_DIRECT_CAPACITY ?
+					ByteBuffer.allocateDirect(newCapacity) :
+					ByteBuffer.allocate(newCapacity);
+			if (bytes != null && keep > 0) {
+				grown.put(bytes.flip().limit(keep));
+			}
+			bytes = grown;
+		}
+
+		private void release() {
+			// oversized heap buffers and decode buffers are not kept between entries
+			if (bytes != null && !bytes.isDirect()) {
+				bytes = null;
+			}
+			if (chars != null && chars.capacity() > MAX_DIRECT_CAPACITY / 2) {
+				chars = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+import edu.mimuw.sovaide.domain.model.File;
+
+/**
+ * Compares the entries of a newly uploaded archive with the files already stored for the project.
+ * Entries whose CRC matches the one the {@link IngestManifest manifest} recorded for the stored file are
+ * kept as they are, so only added and changed entries have to be read and parsed again, and files
+ * missing from the archive are dropped. Stored files the manifest has no record of are compared by the
+ * CRC of their content, which only matches for files stored with the text of their entry.
+ * <p>
+ * A class file and the class files that may be nested in it make one stub, so they are kept only if
+ * none of them changed. Entries stored without their content, such as resources when their contents
+ * are not wanted, have nothing to compare, so they always count as changed. Recording them again costs
+ * no read.
+ */
+class EntryChangeSet {
+
+	private final Map<String, File> unchanged = new HashMap<>();
+
+	private int changedCount;
+
+	private int addedCount;
+
+	private Set<String> removedPaths = Set.of();
+
+	EntryChangeSet(List<File> storedFiles, List<ArchiveEntry> entries, Predicate<String> storesContent,
+			IngestManifest manifest) throws IOException {
+		Map<String, File> storedByPath = new HashMap<>();
+		if (storedFiles != null) {
+			for (File file : storedFiles) {
+				if (file.getPath() != null) {
+					storedByPath.put(file.getPath(), file);
+				}
+			}
+		}
+
+		for (ArchiveEntry entry : entries) {
+			File stored = storedByPath.remove(entry.path());
+			if (stored == null) {
+				addedCount++;
+			} else if (storesContent.test(entry.entry().getName()) && isUnchanged(entry, stored, manifest)) {
+				unchanged.put(entry.path(), stored);
+			} else {
+				changedCount++;
+			}
+		}
+		for (ArchiveEntry entry : entries) {
+			if (!entry.nestedClassCandidates().isEmpty() && !isUnchangedFamily(entry)) {
+				changedCount += unchanged.remove(entry.path()) != null ? 1 : 0;
+				for (ArchiveEntry candidate : entry.nestedClassCandidates()) {
+					changedCount += unchanged.remove(candidate.path()) != null ? 1 : 0;
+				}
+			}
+		}
+		removedPaths = Set.copyOf(storedByPath.keySet());
+	}
+
+	static EntryChangeSet empty(List<ArchiveEntry> entries) {
+		return new EntryChangeSet(entries.size());
+	}
+
+	private EntryChangeSet(int addedCount) {
+		this.addedCount = addedCount;
+	}
+
+	/**
+	 * @return the stored file for an entry path whose content did not change, or {@code null} if the entry
+	 * has to be parsed
+	 */
+	File unchangedFile(String path) {
+		return unchanged.get(path);
+	}
+
+	int unchangedCount() {
+		return unchanged.size();
+	}
+
+	int changedCount() {
+		return changedCount;
+	}
+
+	int addedCount() {
+		return addedCount;
+	}
+
+	int removedCount() {
+		return removedPaths.size();
+	}
+
+	/**
+	 * @return paths of the stored files whose entries are no longer in the archive
+	 */
+	Set<String> removedPaths() {
+		return removedPaths;
+	}
+
+	private static boolean isUnchanged(ArchiveEntry entry, File stored, IngestManifest manifest)
+			throws IOException {
+		long entryCrc = entryCrc(entry.jarFile(), entry.entry());
+		return manifest.contains(entry.path()) ? manifest.matches(entry.path(), entryCrc, stored.getContent()) :
+				entryCrc == contentCrc(stored.getContent());
+	}
+
+	private boolean isUnchangedFamily(ArchiveEntry classFile) {
+		if (!unchanged.containsKey(classFile.path())) {
+			return false;
+		}
+		for (ArchiveEntry candidate : classFile.nestedClassCandidates()) {
+			if (!unchanged.containsKey(candidate.path())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long entryCrc(JarFile jarFile, JarEntry entry) throws IOException {
+		// the central directory already holds the CRC, so the entry only has to be read when it is missing
+		if (entry.getCrc() != -1) {
+			return entry.getCrc();
+		}
+		CRC32 crc = new CRC32();
+		try (InputStream is = jarFile.getInputStream(entry)) {
+			crc.update(is.readAllBytes());
+		}
+		return crc.getValue();
+	}
+
+	private static long contentCrc(String content) {
+		CRC32 crc = new CRC32();
+		if (content != null) {
+			crc.update(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return crc.getValue();
+	}
+}
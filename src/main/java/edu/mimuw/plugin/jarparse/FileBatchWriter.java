@@ -0,0 +1,121 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.sovaide.domain.model.File;
+import edu.mimuw.sovaide.domain.model.Project;
+import edu.mimuw.sovaide.domain.model.repository.ProjectRepository;
+
+/**
+ * Collects parsed files and saves the project with them at checkpoints while the archive is parsed.
+ * <p>
+ * The repository can only replace the file list of a project with the one the project carries, it has
+ * no call that appends files. Every save therefore carries all files added so far, and the writer keeps
+ * every file until the ingest ends, just like a single save at the end would. Checkpoints bound how much
+ * parsed work waits to be saved, and how much of it a failed run loses, not the memory the files take.
+ * <p>
+ * A checkpoint is saved once the files added since the last save reach the configured number of files
+ * or content size, and also at least as many files or as much content as the last save carried. The
+ * saves of an ingest thus write about twice as many files in total as a single save, instead of a
+ * number that grows with the square of the archive size.
+ * <p>
+ * When re-ingesting, the writer starts from the files stored before, and an added file replaces the
+ * stored one with the same path. Every save then leaves the project complete, and stored files are
+ * only dropped when the ingest {@link #remove(Collection) removes} them.
+ */
+class FileBatchWriter {
+
+	private final Project project;
+
+	private final ProjectRepository projectRepository;
+
+	private final JarParseOptions options;
+
+	private final PluginRunMetrics metrics;
+
+	// by path, in the order the files were first stored or added
+	private final Map<String, File> files = new LinkedHashMap<>();
+
+	private int unsavedFiles;
+
+	private long unsavedBytes;
+
+	private int savedFiles;
+
+	private long savedBytes;
+
+	private int entitiesCreated;
+
+	private int batchesSaved;
+
+	/**
+	 * @param storedFiles files the project keeps unless they are replaced or removed, empty to replace all
+	 */
+	FileBatchWriter(Project project, ProjectRepository projectRepository, JarParseOptions options,
+			PluginRunMetrics metrics, List<File> storedFiles) {
+		this.project = project;
+		this.projectRepository = projectRepository;
+		this.options = options;
+		this.metrics = metrics;
+		storedFiles.forEach(file -> files.put(file.getPath(), file));
+	}
+
+	void add(File file, long contentBytes) {
+		entitiesCreated += file.getEntities() != null ? file.getEntities().size() : 0;
+		if (files.put(file.getPath(), file) == file) {
+			return; // a stored file kept as it is, which needs no save
+		}
+		unsavedFiles++;
+		unsavedBytes += contentBytes;
+
+		if (options.isBatched() && (unsavedFiles >= Math.max(options.batchSize(), savedFiles)
+				|| unsavedBytes >= Math.max(options.maxBatchBytes(), savedBytes))) {
+			flush();
+		}
+	}
+
+	/**
+	 * Drops the files with the given paths from the project at the next save.
+	 */
+	void remove(Collection<String> paths) {
+		for (String path : paths) {
+			if (files.remove(path) != null) {
+				unsavedFiles++;
+			}
+		}
+	}
+
+	void flush() {
+		if (unsavedFiles == 0 && batchesSaved > 0) {
+			return;
+		}
+		// a copy, as the repository may keep the list it was given while more files are added
+		List<File> saved = new ArrayList<>(files.values());
+		metrics.run(PluginRunMetrics.PERSIST, () -> {
+			project.setFiles(saved);
+			projectRepository.save(project);
+		});
+		batchesSaved++;
+		savedFiles = saved.size();
+		savedBytes += unsavedBytes;
+		unsavedFiles = 0;
+		unsavedBytes = 0;
+	}
+
+	/**
+	 * @return the files the project has after the next save
+	 */
+	Collection<File> files() {
+		return files.values();
+	}
+
+	JarParseSummary summary(EntryChangeSet changes) {
+		return new JarParseSummary(files.size(), entitiesCreated, batchesSaved, changes.unchangedCount(),
+				changes.changedCount(), changes.addedCount(), changes.removedCount());
+	}
+}
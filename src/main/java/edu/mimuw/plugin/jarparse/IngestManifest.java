@@ -0,0 +1,124 @@
+package edu.mimuw.plugin.jarparse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+import edu.mimuw.sovaide.domain.model.File;
+
+/**
+ * CRCs of the archive entries the stored files of a project were made of, kept in a directory on disk
+ * between ingests. A stored file has no property of its own to keep the CRC in, and its content cannot
+ * stand in for it: class files are stored as declaration stubs, or without content if they are nested,
+ * so their content never matches the entry they came from.
+ * <p>
+ * Each record also keeps the hash of the content the file was stored with, and only vouches for a file
+ * whose stored content still has it, so a file changed by anything else than the ingest is parsed again.
+ * The location can be set with the {@value #DIRECTORY_PROPERTY} system property.
+ */
+class IngestManifest {
+
+	public static final String DIRECTORY_PROPERTY = "sova.ingest-manifest.dir";
+
+	private static final int FORMAT_VERSION = 1;
+
+	// null when the project has no id to name the manifest after, which then is neither read nor written
+	private final Path file;
+
+	private final Map<String, EntryRecord> records;
+
+	private IngestManifest(Path file, Map<String, EntryRecord> records) {
+		this.file = file;
+		this.records = records;
+	}
+
+	/**
+	 * @return the manifest saved by the last complete ingest of the project, empty if there is none
+	 */
+	static IngestManifest load(String projectId) {
+		if (projectId == null) {
+			return new IngestManifest(null, Map.of());
+		}
+		Path file = Path.of(System.getProperty(DIRECTORY_PROPERTY,
+						System.getProperty("java.io.tmpdir") + "/sova-ingest-manifest"))
+				.resolve(HexFormat.of().formatHex(projectId.getBytes(StandardCharsets.UTF_8)) + ".bin");
+		Map<String, EntryRecord> records = new HashMap<>();
+		try (InputStream is = Files.newInputStream(file); DataInputStream in = new DataInputStream(is)) {
+			if (in.readInt() == FORMAT_VERSION) {
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					records.put(in.readUTF(), new EntryRecord(in.readLong(), in.readInt()));
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// first ingest of the project
+		} catch (IOException e) {
+			System.err.println("Error reading ingest manifest " + file + ": " + e.getMessage());
+			records.clear();
+		}
+		return new IngestManifest(file, records);
+	}
+
+	boolean contains(String path) {
+		return records.containsKey(path);
+	}
+
+	/**
+	 * @return whether the stored content was made of an entry with the given CRC
+	 */
+	boolean matches(String path, long entryCrc, String storedContent) {
+		EntryRecord record = records.get(path);
+		return record != null && record.entryCrc() == entryCrc
+				&& record.contentHash() == (storedContent != null ? storedContent.hashCode() : 0);
+	}
+
+	/**
+	 * Replaces the manifest with the CRCs of the given entries, for the files made of them.
+	 *
+	 * @param entryCrcs CRCs of the archive entries by path, for the entries whose content is stored
+	 */
+	void save(Collection<File> files, Map<String, Long> entryCrcs) {
+		if (file == null) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeInt(FORMAT_VERSION);
+				int count = 0;
+				for (File stored : files) {
+					count += entryCrcs.containsKey(stored.getPath()) ? 1 : 0;
+				}
+				out.writeInt(count);
+				for (File stored : files) {
+					Long entryCrc = entryCrcs.get(stored.getPath());
+					if (entryCrc != null) {
+						out.writeUTF(stored.getPath());
+						out.writeLong(entryCrc);
+						out.writeInt(stored.getContent() != null ? stored.getContent().hashCode() : 0);
+					}
+				}
+			}
+			Files.createDirectories(file.getParent());
+			Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			Files.write(temp, bytes.toByteArray());
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Error writing ingest manifest " + file + ": " + e.getMessage());
+		}
+	}
+
+	private record EntryRecord(long entryCrc, int contentHash) {
+	}
+}
@@ -0,0 +1,60 @@
+package edu.mimuw.plugin.jarparse;
+
+import edu.mimuw.plugin.summary.ParseProfile;
+
+/**
+ * Tuning knobs for {@link JarParseService}.
+ *
+ * @param parallelism    number of threads reading and parsing entries, {@code 1} parses on the calling thread
+ * @param batchSize      number of new files after which the project is saved as a checkpoint, {@code 0} saves it
+ *                       once at the end; also the number of entries parsed ahead of the writer. As the repository
+ *                       cannot append files, every save carries all files of the project
+ * @param maxBatchBytes  content size of new files after which a checkpoint is saved regardless of their count;
+ *                       also the size of the entries parsed ahead of the writer
+ * @param incremental    keep stored files whose entry did not change instead of parsing the whole archive again
+ * @param nestedArchives ingest the entries of archives inside the archive, such as {@code BOOT-INF/lib/*.jar},
+ *                       instead of storing the nested archives as opaque files
+ * @param profile        how much of every source is parsed, see {@link ParseProfile}
+ * @param resourceContents store resources and other entries with their text like sources; without it they are
+ *                       recorded by path and kind only, which saves reading them, and are recorded again by
+ *                       every incremental run, as there is no stored content to compare
+ */
+public record JarParseOptions(int parallelism, int batchSize, long maxBatchBytes, boolean incremental,
+		boolean nestedArchives, ParseProfile profile, boolean resourceContents) {
+
+	public JarParseOptions {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+		}
+		if (batchSize < 0) {
+			throw new IllegalArgumentException("Batch size must not be negative, got " + batchSize);
+		}
+		if (maxBatchBytes < 1) {
+			throw new IllegalArgumentException("Batch memory limit must be positive, got " + maxBatchBytes);
+		}
+		if (incremental && nestedArchives) {
+			// nested entries carry no checksum that could be compared before they are read
+			throw new IllegalArgumentException("Incremental parsing cannot be combined with nested archives");
+		}
+		if (profile == null) {
+			throw new IllegalArgumentException("Parse profile must be given");
+		}
+	}
+
+	public JarParseOptions(int parallelism, int batchSize, long maxBatchBytes, boolean incremental,
+			boolean nestedArchives, ParseProfile profile) {
+		this(parallelism, batchSize, maxBatchBytes, incremental, nestedArchives, profile, true);
+	}
+
+	public JarParseOptions(int parallelism, int batchSize, long maxBatchBytes, boolean incremental) {
+		this(parallelism, batchSize, maxBatchBytes, incremental, false, ParseProfile.FULL);
+	}
+
+	public static JarParseOptions defaults() {
+		return new JarParseOptions(1, 0, Long.MAX_VALUE, false, false, ParseProfile.FULL);
+	}
+
+	public boolean isBatched() {
+		return batchSize > 0;
+	}
+}
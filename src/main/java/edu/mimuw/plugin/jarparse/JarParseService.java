@@ -2,25 +2,38 @@ package edu.mimuw.plugin.jarparse;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import com.github.javaparser.ParseProblemException;
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
-import com.github.javaparser.ast.body.TypeDeclaration;
 
+import edu.mimuw.plugin.jarparse.ClassFileScanner.ClassFileSummary;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.summary.SourceSummary;
+import edu.mimuw.plugin.summary.SourceSummary.TypeSummary;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
 import edu.mimuw.sovaide.domain.model.Entity;
 import edu.mimuw.sovaide.domain.model.EntityKind;
 import edu.mimuw.sovaide.domain.model.File;
 import edu.mimuw.sovaide.domain.model.FileKind;
 import edu.mimuw.sovaide.domain.model.Member;
-import edu.mimuw.sovaide.domain.model.MemberKind;
 import edu.mimuw.sovaide.domain.model.Project;
 import edu.mimuw.sovaide.domain.model.repository.ProjectRepository;
 
@@ -28,103 +41,628 @@ public class JarParseService {
 
 	private final ProjectRepository projectRepository;
 
+	private final JarParseOptions options;
+
+	private final SourceSummaryCache summaryCache = SourceSummaryCache.shared();
+
+	private final ClassFileScanner classFileScanner = new ClassFileScanner();
+
+	private final PluginRunMetrics metrics;
+
+	private final PluginRunControl run;
+
+	// null when no metrics are stored
+	private final EntityMetricsWriter entityMetrics;
+
 	public JarParseService(ProjectRepository projectRepository) {
+		this(projectRepository, JarParseOptions.defaults());
+	}
+
+	public JarParseService(ProjectRepository projectRepository, JarParseOptions options) {
+		this(projectRepository, options, new PluginRunMetrics(JarParseService.class.getSimpleName()));
+	}
+
+	public JarParseService(ProjectRepository projectRepository, JarParseOptions options, PluginRunMetrics metrics) {
+		this(projectRepository, options, metrics, PluginRunControl.unbounded());
+	}
+
+	public JarParseService(ProjectRepository projectRepository, JarParseOptions options, PluginRunMetrics metrics,
+			PluginRunControl run) {
+		this(projectRepository, options, metrics, run, null);
+	}
+
+	/**
+	 * @param entityMetrics records the size metrics of every entity built, so they can be stored once the
+	 *                      project is saved
+	 */
+	JarParseService(ProjectRepository projectRepository, JarParseOptions options, PluginRunMetrics metrics,
+			PluginRunControl run, EntityMetricsWriter entityMetrics) {
 		this.projectRepository = projectRepository;
+		this.options = options;
+		this.metrics = metrics;
+		this.run = run;
+		this.entityMetrics = entityMetrics;
 	}
 
-	public void parse(Project project, String localFilePath) {
-		String projectId = project.getId();
-		List<File> allFiles = new ArrayList<>();
-
-		try (JarFile jarFile = new JarFile(localFilePath)) {
-			System.out.println("Parsing JAR file: " + localFilePath);
-			Enumeration<JarEntry> entries = jarFile.entries();
-			while (entries.hasMoreElements()) {
-				JarEntry entry = entries.nextElement();
-				if (entry.isDirectory()) continue;
-				String entryName = entry.getName();
-				String content;
-				try (InputStream is = jarFile.getInputStream(entry)) {
-					content = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-					FileKind kind = readFileKind(entryName);
-					List<Entity> entities = findEntities(entryName, content, kind, projectId);
-					File file = new File();
-					file.setProjectId(projectId);
-					file.setKind(kind);
-					file.setPath(entryName);
-					file.setContent(content);
-					file.setEntities(entities);
-					allFiles.add(file);
+	public JarParseSummary parse(Project project, String localFilePath) {
+		return parse(project, List.of(localFilePath));
+	}
+
+	/**
+	 * Ingests several archives into one project; their entries are parsed together, concurrently if the
+	 * parallelism allows it. Entries of the first archive are stored under their own paths, entries of the
+	 * other archives and of nested archives as {@code archive!/entry}, so that every file records the
+	 * archive it came from. Additional archives named like an earlier one are told apart by their position,
+	 * as in {@code archive[2]!/entry}.
+	 * <p>
+	 * If the run stops early, the files parsed so far are saved. In incremental mode the stored files of
+	 * the entries not visited are kept, and stored files missing from the archive are only dropped by a
+	 * complete run.
+	 */
+	public JarParseSummary parse(Project project, List<String> localFilePaths) {
+		List<File> storedFiles = options.incremental() && project.getFiles() != null ? project.getFiles() : List.of();
+		FileBatchWriter writer = new FileBatchWriter(project, projectRepository, options, metrics, storedFiles);
+		List<JarFile> jarFiles = new ArrayList<>();
+		List<ArchiveEntry> entries = new ArrayList<>();
+		IngestManifest manifest = IngestManifest.load(project.getId());
+		EntryChangeSet changes;
+
+		// one pool for the whole ingest; none is needed when parsing sequentially
+		try (ExecutorService executor = options.parallelism() == 1 ? null :
+				Executors.newFixedThreadPool(options.parallelism())) {
+			Set<String> origins = new HashSet<>();
+			for (int i = 0; i < localFilePaths.size(); i++) {
+				String localFilePath = localFilePaths.get(i);
+				System.out.println("Parsing JAR file: " + localFilePath + " (parallelism: " + options.parallelism()
+						+ ", batch size: " + options.batchSize() + ", profile: " + options.profile() + ")");
+				JarFile jarFile = new JarFile(localFilePath);
+				jarFiles.add(jarFile);
+				String origin = i == 0 ? "" : origin(Path.of(localFilePath).getFileName().toString(), i, origins);
+				entries.addAll(archiveEntries(jarFile, origin));
+			}
+			changes = options.incremental() ?
+					new EntryChangeSet(project.getFiles(), entries, this::storesContent, manifest) :
+					EntryChangeSet.empty(entries);
+			if (options.incremental()) {
+				System.out.println("Unchanged entries: " + changes.unchangedCount() + ", changed: "
+						+ changes.changedCount() + ", added: " + changes.addedCount() + ", removed: "
+						+ changes.removedCount());
+			}
+
+			IngestContext context = new IngestContext(project.getId(), new EntryBufferPool(), new ContentStore(),
+					changes);
+			ParseQueue queue = new ParseQueue(executor, writer);
+			run.begin("parse", entries.size());
+			for (ArchiveEntry entry : entries) {
+				if (run.shouldStop()) {
+					break;
+				}
+				if (entry.nestedClassCandidate()) {
+					continue; // parsed with the class file it may be nested in
+				}
+				if (options.nestedArchives() && isArchive(entry.entry().getName())) {
+					parseNestedArchive(entry, context, queue);
+				} else {
+					long entryBytes = Math.max(0, entry.entry().getSize());
+					for (ArchiveEntry candidate : entry.nestedClassCandidates()) {
+						entryBytes += Math.max(0, candidate.entry().getSize());
+					}
+					queue.submit(entryBytes, () -> parseEntry(entry, context));
 				}
 			}
+			queue.finish();
 		} catch (IOException ex) {
 			throw new RuntimeException(ex);
+		} finally {
+			for (JarFile jarFile : jarFiles) {
+				try {
+					jarFile.close();
+				} catch (IOException e) {
+					System.err.println("Error when closing " + jarFile.getName() + ": " + e.getMessage());
+				}
+			}
+		}
+
+		if (run.isComplete()) {
+			writer.remove(changes.removedPaths());
+		} else if (options.incremental()) {
+			System.out.println("Parsing stopped early, stored files missing from the archive were kept");
+		}
+		writer.flush();
+		if (run.isComplete()) {
+			manifest.save(writer.files(), entryCrcs(entries));
+		}
+		return writer.summary(changes);
+	}
+
+	/**
+	 * A run that stopped early keeps the manifest of the last complete one, whose records only vouch for
+	 * the files still stored with the content they were recorded with.
+	 *
+	 * @return CRCs of the entries whose content is stored, by path
+	 */
+	private Map<String, Long> entryCrcs(List<ArchiveEntry> entries) {
+		Map<String, Long> entryCrcs = new HashMap<>();
+		for (ArchiveEntry entry : entries) {
+			if (entry.entry().getCrc() != -1 && storesContent(entry.entry().getName())) {
+				entryCrcs.put(entry.path(), entry.entry().getCrc());
+			}
+		}
+		return entryCrcs;
+	}
+
+	/**
+	 * Prefixes the paths of an additional archive's entries with its file name, followed by its position
+	 * among the archives if an archive before it has the same name, so that no two archives share paths.
+	 */
+	private static String origin(String fileName, int index, Set<String> origins) {
+		String origin = fileName + "!/";
+		if (!origins.add(origin)) {
+			origin = fileName + "[" + index + "]!/";
+			origins.add(origin);
+		}
+		return origin;
+	}
+
+	/**
+	 * Hands parsed files to the writer in entry order, each as soon as it and the entries before it are
+	 * done. At most the batch size of entries, and entries of at most the batch memory limit in size, are
+	 * being parsed or waiting for the writer at any time, so the limits bound a parallel ingest too.
+	 */
+	private final class ParseQueue {
+
+		// null parses every entry on the calling thread when it is submitted
+		private final ExecutorService executor;
+
+		private final FileBatchWriter writer;
+
+		private final Deque<Pending> pending = new ArrayDeque<>();
+
+		private long pendingBytes;
+
+		ParseQueue(ExecutorService executor, FileBatchWriter writer) {
+			this.executor = executor;
+			this.writer = writer;
+		}
+
+		void submit(long entryBytes, ParseTask task) throws IOException {
+			if (executor == null) {
+				write(task.parse());
+				return;
+			}
+			int maxEntries = options.isBatched() ? options.batchSize() : Integer.MAX_VALUE;
+			while (!pending.isEmpty()
+					&& (pending.size() >= maxEntries || pendingBytes + entryBytes > options.maxBatchBytes())) {
+				writeOldest();
+			}
+			pending.add(new Pending(executor.submit(task::parse), entryBytes));
+			pendingBytes += entryBytes;
+		}
+
+		void finish() throws IOException {
+			while (!pending.isEmpty()) {
+				writeOldest();
+			}
+		}
+
+		private void writeOldest() throws IOException {
+			Pending oldest = pending.poll();
+			pendingBytes -= oldest.entryBytes();
+			try {
+				write(oldest.files().get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while parsing JAR entries", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException ioException) {
+					throw ioException;
+				}
+				throw new RuntimeException(e.getCause());
+			}
 		}
 
-		project.setFiles(allFiles);
-		projectRepository.save(project);
+		private void write(List<ParsedFile> files) {
+			files.forEach(parsed -> writer.add(parsed.file(), parsed.contentBytes()));
+		}
+	}
+
+	private interface ParseTask {
+
+		List<ParsedFile> parse() throws IOException;
+	}
+
+	private record Pending(Future<List<ParsedFile>> files, long entryBytes) {
+	}
+
+	/**
+	 * @return the file of the entry
+	 */
+	private List<ParsedFile> parseEntry(ArchiveEntry archiveEntry, IngestContext context) throws IOException {
+		if (run.shouldStop()) {
+			return List.of();
+		}
+		JarEntry entry = archiveEntry.entry();
+		if (entry.getName().endsWith(".class") && storesContent(entry.getName())) {
+			return parseClassFiles(archiveEntry, context);
+		}
+		run.advance();
+		String path = archiveEntry.path();
+		File unchanged = context.changes().unchangedFile(path);
+		if (unchanged != null) {
+			return List.of(new ParsedFile(unchanged, 0));
+		}
+		if (!storesContent(entry.getName())) {
+			return List.of(parseResource(entry.getName(), path, context));
+		}
+		try (InputStream is = archiveEntry.jarFile().getInputStream(entry)) {
+			return List.of(parseContent(is, entry.getSize(), entry.getName(), path, context));
+		}
+	}
+
+	/**
+	 * Makes the entries of one archive. A class file whose name continues the name of another class file
+	 * after a {@code $} may hold a class nested in it, so it is parsed together with the outermost such class
+	 * file, and every class file is read and scanned once. Which candidates really are nested, rather than
+	 * top-level classes with a {@code $} in their name, is only known once they are scanned.
+	 *
+	 * @param origin prefix of the paths the entries are stored under
+	 */
+	private static List<ArchiveEntry> archiveEntries(JarFile jarFile, String origin) {
+		List<JarEntry> jarEntries = jarFile.stream().filter(entry -> !entry.isDirectory()).toList();
+		Set<String> classFiles = new HashSet<>();
+		for (JarEntry entry : jarEntries) {
+			if (entry.getName().endsWith(".class")) {
+				classFiles.add(entry.getName());
+			}
+		}
+
+		Map<String, List<ArchiveEntry>> candidates = new HashMap<>();
+		Map<String, ArchiveEntry> candidateEntries = new HashMap<>();
+		for (JarEntry entry : jarEntries) {
+			String owner = outermostOwner(entry.getName(), classFiles);
+			if (owner != null) {
+				ArchiveEntry candidate = new ArchiveEntry(jarFile, entry, origin + entry.getName(), List.of(), true);
+				candidates.computeIfAbsent(owner, name -> new ArrayList<>()).add(candidate);
+				candidateEntries.put(entry.getName(), candidate);
+			}
+		}
+		List<ArchiveEntry> entries = new ArrayList<>(jarEntries.size());
+		for (JarEntry entry : jarEntries) {
+			ArchiveEntry candidate = candidateEntries.get(entry.getName());
+			entries.add(candidate != null ? candidate : new ArchiveEntry(jarFile, entry, origin + entry.getName(),
+					candidates.getOrDefault(entry.getName(), List.of()), false));
+		}
+		return entries;
+	}
+
+	/**
+	 * @return the shortest class file name the given one continues after a {@code $}, or {@code null} if
+	 *         there is none
+	 */
+	private static String outermostOwner(String name, Set<String> classFiles) {
+		if (!name.endsWith(".class")) {
+			return null;
+		}
+		int simpleNameStart = name.lastIndexOf('/') + 1;
+		for (int i = name.indexOf('$', simpleNameStart + 1); i >= 0; i = name.indexOf('$', i + 1)) {
+			String owner = name.substring(0, i) + ".class";
+			if (classFiles.contains(owner)) {
+				return owner;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a class file together with the class files that may be nested in it. They are kept as stored
+	 * only if none of them changed, as the stub of a top-level class is made of its nested classes too.
+	 */
+	private List<ParsedFile> parseClassFiles(ArchiveEntry archiveEntry, IngestContext context) throws IOException {
+		List<ArchiveEntry> classFiles = new ArrayList<>();
+		classFiles.add(archiveEntry);
+		classFiles.addAll(archiveEntry.nestedClassCandidates());
+
+		List<ParsedFile> unchanged = new ArrayList<>();
+		for (ArchiveEntry classFile : classFiles) {
+			File stored = context.changes().unchangedFile(classFile.path());
+			if (stored != null) {
+				unchanged.add(new ParsedFile(stored, 0));
+			}
+		}
+		if (unchanged.size() == classFiles.size()) {
+			classFiles.forEach(classFile -> run.advance());
+			return unchanged;
+		}
+
+		Map<String, ClassFileSummary> summaries = new LinkedHashMap<>();
+		for (ArchiveEntry classFile : classFiles) {
+			run.advance();
+			JarEntry entry = classFile.entry();
+			try (InputStream is = classFile.jarFile().getInputStream(entry)) {
+				summaries.put(classFile.path(), scanClassFile(is, entry.getSize(), classFile.path(), context));
+			}
+		}
+		return parseClassFiles(summaries, context.projectId());
+	}
+
+	/**
+	 * Makes a file of each of the scanned class files, adding the references of every nested class to the
+	 * stub of its top-level class.
+	 *
+	 * @param summaries by path, {@code null} for class files that could not be scanned
+	 */
+	private List<ParsedFile> parseClassFiles(Map<String, ClassFileSummary> summaries, String projectId) {
+		Map<String, List<ClassFileSummary>> nestedClasses = new HashMap<>();
+		for (ClassFileSummary summary : summaries.values()) {
+			if (summary != null && summary.isNested()) {
+				nestedClasses.computeIfAbsent(summary.topLevelName(), name -> new ArrayList<>()).add(summary);
+			}
+		}
+		List<ParsedFile> files = new ArrayList<>(summaries.size());
+		summaries.forEach((path, summary) -> files.add(parseClassFile(path, summary,
+				summary != null ? nestedClasses.getOrDefault(summary.name(), List.of()) : List.of(), projectId)));
+		return files;
+	}
+
+	/**
+	 * Nested archives are read on the calling thread, as a nested entry can only be read while its archive
+	 * streams by, and each nested entry is handed to the queue on its own. The archive is thus neither
+	 * extracted nor held in memory as a whole, and its files reach the writer in batches like any other.
+	 */
+	private void parseNestedArchive(ArchiveEntry archiveEntry, IngestContext context, ParseQueue queue)
+			throws IOException {
+		run.advance();
+		try (InputStream is = archiveEntry.jarFile().getInputStream(archiveEntry.entry())) {
+			parseNestedArchive(is, archiveEntry.path() + "!/", context, queue);
+		}
+	}
+
+	/**
+	 * Sources and resources are read out of the stream into the buffer pool and decoded here, and parsed by
+	 * the queue. Class files are scanned as they stream by, which keeps a small summary of each, and the
+	 * stubs of a class and its nested classes are made as soon as the archive moves past them. Archives
+	 * list a class file and its nested ones next to each other, as their names only differ after a
+	 * {@code $}; a nested class listed apart from its top-level class is stored on its own, and its
+	 * references are left out of the stub of the top-level class.
+	 */
+	private void parseNestedArchive(InputStream is, String origin, IngestContext context, ParseQueue queue)
+			throws IOException {
+		Map<String, ClassFileSummary> classFamily = new LinkedHashMap<>();
+		String classFamilyName = null;
+		// not closed, as that would close the enclosing archive's stream
+		ZipInputStream archive = new ZipInputStream(is);
+		ZipEntry entry;
+		while ((entry = archive.getNextEntry()) != null && !run.shouldStop()) {
+			if (entry.isDirectory()) {
+				continue;
+			}
+			String entryName = entry.getName();
+			String path = origin + entryName;
+			if (entryName.endsWith(".class") && storesContent(entryName)) {
+				String familyName = classFamilyName(entryName);
+				if (!familyName.equals(classFamilyName)) {
+					submitClassFamily(classFamily, context, queue);
+					classFamilyName = familyName;
+				}
+				classFamily.put(path, scanClassFile(archive, entry.getSize(), path, context));
+			} else if (isArchive(entryName)) {
+				parseNestedArchive(archive, path + "!/", context, queue);
+			} else if (!storesContent(entryName)) {
+				queue.submit(0, () -> List.of(parseResource(entryName, path, context)));
+			} else {
+				long readStart = System.nanoTime();
+				int[] size = new int[1];
+				String content = context.buffers().read(archive, entry.getSize(), bytes -> {
+					size[0] = bytes.size();
+					return context.contentStore().store(bytes);
+				});
+				recordRead(readStart, size[0]);
+				queue.submit(size[0], () -> List.of(parseText(content, size[0], entryName, path, context)));
+			}
+		}
+		submitClassFamily(classFamily, context, queue);
+	}
+
+	/**
+	 * @return the name of the class file up to the {@code $} that starts the names of its nested classes
+	 */
+	private static String classFamilyName(String entryName) {
+		String name = entryName.substring(0, entryName.length() - ".class".length());
+		int nested = name.indexOf('$', name.lastIndexOf('/') + 2);
+		return nested < 0 ? name : name.substring(0, nested);
+	}
+
+	private void submitClassFamily(Map<String, ClassFileSummary> classFamily, IngestContext context,
+			ParseQueue queue) throws IOException {
+		if (classFamily.isEmpty()) {
+			return;
+		}
+		Map<String, ClassFileSummary> summaries = new LinkedHashMap<>(classFamily);
+		classFamily.clear();
+		queue.submit(0, () -> parseClassFiles(summaries, context.projectId()));
+	}
+
+	// resources whose contents are not stored are recorded by path and kind only, so they are neither read nor decoded
+	private ParsedFile parseResource(String entryName, String path, IngestContext context) {
+		return new ParsedFile(newFile(context.projectId(), readFileKind(entryName), path, "", List.of()), 0);
+	}
+
+	/**
+	 * Reads a source file or a resource from the stream, which is left open.
+	 *
+	 * @param entryName name of the entry within its own archive, which determines its kind
+	 * @param path      path the file is stored under
+	 */
+	private ParsedFile parseContent(InputStream is, long sizeHint, String entryName, String path,
+			IngestContext context) throws IOException {
+		long readStart = System.nanoTime();
+		// identical entries share one decoded text, which the file and its entities all refer to
+		int[] size = new int[1];
+		String content = context.buffers().read(is, sizeHint, bytes -> {
+			size[0] = bytes.size();
+			return context.contentStore().store(bytes);
+		});
+		recordRead(readStart, size[0]);
+		return parseText(content, size[0], entryName, path, context);
+	}
+
+	/**
+	 * @param contentBytes size of the entry the text was decoded from
+	 */
+	private ParsedFile parseText(String content, int contentBytes, String entryName, String path,
+			IngestContext context) {
+		FileKind kind = readFileKind(entryName);
+		List<Entity> entities = findEntities(path, content, kind, context.projectId());
+		return new ParsedFile(newFile(context.projectId(), kind, path, content, entities), contentBytes);
+	}
+
+	private boolean isArchive(String entryName) {
+		return entryName.endsWith(".jar") || entryName.endsWith(".war");
+	}
+
+	private void recordRead(long readStart, int bytesRead) {
+		metrics.record(PluginRunMetrics.READ, System.nanoTime() - readStart);
+		metrics.addBytesProcessed(bytesRead);
+	}
+
+	/**
+	 * Sources and resources are stored with their text and class files with a stub of their declaration,
+	 * unless resource contents are not wanted.
+	 */
+	private boolean storesContent(String entryName) {
+		FileKind kind = readFileKind(entryName);
+		return options.resourceContents() || kind == FileKind.SOURCE_FILE || kind == FileKind.TEST_FILE
+				|| entryName.endsWith(".class");
+	}
+
+	private File newFile(String projectId, FileKind kind, String entryName, String content, List<Entity> entities) {
+		File file = new File();
+		file.setProjectId(projectId);
+		file.setKind(kind);
+		file.setPath(entryName);
+		file.setContent(content);
+		file.setEntities(entities);
+		return file;
+	}
+
+	/**
+	 * Reads a class file from the stream, which is left open, and scans it.
+	 *
+	 * @return the summary, or {@code null} if the class file cannot be scanned
+	 */
+	private ClassFileSummary scanClassFile(InputStream is, long sizeHint, String path, IngestContext context)
+			throws IOException {
+		long readStart = System.nanoTime();
+		return context.buffers().read(is, sizeHint, bytes -> {
+			recordRead(readStart, bytes.size());
+			long parseStart = System.nanoTime();
+			try {
+				return classFileScanner.scan(bytes.bytes());
+			} catch (IllegalArgumentException e) {
+				metrics.addParseFailures(1);
+				System.err.println("Error when scanning " + path + ": " + e.getMessage());
+				return null;
+			} finally {
+				metrics.record(PluginRunMetrics.PARSE, System.nanoTime() - parseStart);
+			}
+		});
+	}
+
+	/**
+	 * Class files are never decoded as text, the entity content of a top-level class is a declaration
+	 * stub built from its constant pool and those of its nested classes. Nested classes are stored as
+	 * files without entities, like class files that cannot be scanned.
+	 */
+	private ParsedFile parseClassFile(String path, ClassFileSummary summary, List<ClassFileSummary> nestedClasses,
+			String projectId) {
+		String content = "";
+		List<Entity> entities = List.of();
+		if (summary != null && ClassFileStub.isTopLevel(summary)) {
+			content = ClassFileStub.render(summary, nestedClasses);
+			Entity entity = new Entity();
+			entity.setProjectId(projectId);
+			entity.setKind(findEntityKind(summary));
+			entity.setContent(content);
+			entity.setName(summary.simpleName());
+			entity.setMembers(List.of());
+			entities = List.of(entity);
+			if (entityMetrics != null) {
+				measureStub(content, summary.simpleName());
+			}
+		}
+		// only the stub is kept, the class file bytes went back to the pool
+		return new ParsedFile(newFile(projectId, FileKind.OTHER, path, content, entities), content.length());
+	}
+
+	// stubs are measured like sources, so that their metrics match the ones the output plugins would compute
+	private void measureStub(String stub, String name) {
+		long parseStart = System.nanoTime();
+		SourceSummary summary;
+		try {
+			summary = summaryCache.summarize(stub, options.profile());
+		} catch (ParseProblemException e) {
+			metrics.addParseFailures(1);
+			System.err.println("Error when parsing the stub of " + name + ": " + e.getMessage());
+			return;
+		} finally {
+			metrics.record(PluginRunMetrics.PARSE, System.nanoTime() - parseStart);
+		}
+		summary.types().stream()
+				.filter(type -> type.name().equals(name))
+				.findFirst()
+				.ifPresent(type -> entityMetrics.measure(stub, summary, type));
 	}
 
 	private List<Entity> findEntities(String entryName, String content, FileKind kind, String projectId) {
 		if (kind == FileKind.SOURCE_FILE || kind == FileKind.TEST_FILE) {
+			long parseStart = System.nanoTime();
 			try {
-				final String cont = content;
-				CompilationUnit unit = StaticJavaParser.parse(cont);
-				return unit.getTypes().stream().map(type -> {
-					EntityKind entityKind = findEntityKind(type);
-					List<Member> members = (entityKind == EntityKind.CLASS || entityKind == EntityKind.INTERFACE) ?
-							getMembers(type, projectId) : List.of();
+				SourceSummary summary = summaryCache.summarize(content, options.profile());
+				metrics.record(PluginRunMetrics.PARSE, System.nanoTime() - parseStart);
+				return summary.types().stream().map(type -> {
 					Entity entity = new Entity();
 					entity.setProjectId(projectId);
-					entity.setKind(entityKind);
+					entity.setKind(type.kind());
 					entity.setContent(content);
-					entity.setName(type.getNameAsString());
-					entity.setMembers(members);
+					entity.setName(type.name());
+					entity.setMembers(getMembers(type, content, projectId));
+					if (entityMetrics != null) {
+						entityMetrics.measure(content, summary, type);
+					}
 					return entity;
 				}).toList();
 			} catch (ParseProblemException e) {
+				metrics.record(PluginRunMetrics.PARSE, System.nanoTime() - parseStart);
+				metrics.addParseFailures(1);
 				System.err.println("Error when parsing " + entryName + ": " + e.getMessage());
 			}
 		}
 		return List.of();
 	}
 
-	private List<Member> getMembers(TypeDeclaration<?> type, String projectId) {
-		return type.getMembers().stream().map(member -> {
-			MemberKind memberKind;
-			if (member.isFieldDeclaration()) {
-				memberKind = MemberKind.FIELD;
-			} else if (member.isMethodDeclaration()) {
-				memberKind = MemberKind.METHOD;
-			} else if (member.isConstructorDeclaration()) {
-				memberKind = MemberKind.CONSTRUCTOR;
-			} else {
-				memberKind = MemberKind.OTHER;
-			}
+	// members are cut out of the original text rather than pretty-printed from the syntax tree again
+	private List<Member> getMembers(TypeSummary type, String content, String projectId) {
+		return type.members().stream().map(member -> {
 			Member memberObj = new Member();
 			memberObj.setProjectId(projectId);
-			memberObj.setContent(member.toString());
-			memberObj.setKind(memberKind);
+			memberObj.setContent(member.source(content));
+			memberObj.setKind(member.kind());
 			return memberObj;
 		}).toList();
 	}
 
-	private EntityKind findEntityKind(TypeDeclaration<?> type) {
-		if (type.isClassOrInterfaceDeclaration()) {
-			ClassOrInterfaceDeclaration coid = type.asClassOrInterfaceDeclaration();
-			if (coid.isInterface()) {
-				return EntityKind.INTERFACE;
-			} else {
-				return EntityKind.CLASS;
-			}
-		} else if (type.isEnumDeclaration()) {
-			return EntityKind.ENUM;
-		} else if (type.isAnnotationDeclaration()) {
+	private EntityKind findEntityKind(ClassFileSummary summary) {
+		int flags = summary.accessFlags();
+		if ((flags & ClassFileScanner.ACC_ANNOTATION) != 0) {
 			return EntityKind.ANNOTATION;
-		} else if (type.isRecordDeclaration()) {
+		} else if ((flags & ClassFileScanner.ACC_INTERFACE) != 0) {
+			return EntityKind.INTERFACE;
+		} else if ((flags & ClassFileScanner.ACC_ENUM) != 0) {
+			return EntityKind.ENUM;
+		} else if (ClassFileStub.isRecord(summary)) {
 			return EntityKind.RECORD;
 		} else {
-			return EntityKind.OTHER;
+			return EntityKind.CLASS;
 		}
 	}
 
@@ -147,4 +685,11 @@ public class JarParseService {
 				fileName.matches("^static/.+") ||
 				fileName.matches("^templates/.+");
 	}
+
+	private record ParsedFile(File file, long contentBytes) {
+	}
+
+	private record IngestContext(String projectId, EntryBufferPool buffers, ContentStore contentStore,
+			EntryChangeSet changes) {
+	}
 }
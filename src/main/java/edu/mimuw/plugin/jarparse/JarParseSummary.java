@@ -0,0 +1,10 @@
+package edu.mimuw.plugin.jarparse;
+
+/**
+ * Counts reported by {@link JarParseService#parse}, so that callers do not have to count the files of
+ * the project again. The entry counts split the archive by how it compares with the files stored
+ * before; without incremental parsing every entry is reported as added.
+ */
+public record JarParseSummary(int filesProcessed, int entitiesCreated, int batchesSaved,
+		int unchangedEntries, int changedEntries, int addedEntries, int removedEntries) {
+}
@@ -1,7 +1,14 @@
 package edu.mimuw.plugin.jarparse;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import edu.mimuw.plugin.cache.PluginResultCache;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.summary.ParseProfile;
+import edu.mimuw.sovaide.domain.graph.GraphDBFacade;
 import edu.mimuw.sovaide.domain.model.repository.ProjectRepository;
 import edu.mimuw.sovaide.domain.plugin.DatabaseInterfaces;
 import edu.mimuw.sovaide.domain.plugin.PluginResult;
@@ -12,6 +19,23 @@ import edu.mimuw.sovaide.domain.plugin.frontend.FrontendComponentType;
 import edu.mimuw.sovaide.domain.plugin.frontend.GuiComponentData;
 
 public class JarParser implements PluginSova {
+
+	private static final String PARALLELISM = "Parallelism (number of threads)";
+
+	private static final String BATCH_SIZE = "New files per checkpoint save (0 saves once at the end)";
+
+	private static final String BATCH_MEMORY_LIMIT = "Batch memory limit in MB";
+
+	private static final String INCREMENTAL = "Skip unchanged entries (true/false)";
+
+	private static final String NESTED_ARCHIVES = "Ingest nested JARs such as BOOT-INF/lib (true/false)";
+
+	private static final String ADDITIONAL_ARCHIVES = "Additional JAR files (comma-separated paths)";
+
+	private static final String PARSE_PROFILE = "Ingest profile (full/skeleton)";
+
+	private static final String RESOURCE_CONTENTS = "Store resource contents (true/false)";
+
 	@Override
 	public String getName() {
 		return "JAR Parser";
@@ -27,26 +51,82 @@ public class JarParser implements PluginSova {
 		return true;
 	}
 
+	@Override
+	public List<String> getStringInputs() {
+		return List.of(PARALLELISM, BATCH_SIZE, BATCH_MEMORY_LIMIT, INCREMENTAL, NESTED_ARCHIVES,
+				ADDITIONAL_ARCHIVES, PARSE_PROFILE, RESOURCE_CONTENTS, PluginRunControl.TIME_BUDGET_INPUT,
+				PluginRunMetrics.TIMING_TABLE_INPUT);
+	}
+
 	@Override
 	public PluginResult execute(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput) {
-		ProjectRepository repository = dbInterfaces.repository();
+		try (PluginRunControl run = PluginRunControl.start(projectId, getName(), userInput)) {
+			return execute(projectId, dbInterfaces, userInput, run);
+		}
+	}
+
+	private PluginResult execute(String projectId, DatabaseInterfaces dbInterfaces, UserInput userInput,
+			PluginRunControl run) {
+		PluginRunMetrics metrics = new PluginRunMetrics(getName());
+		ProjectRepository repository = metrics.instrument(ProjectRepository.class, dbInterfaces.repository());
+		GraphDBFacade graphDBFacade = metrics.instrument(GraphDBFacade.class, dbInterfaces.graphDBFacade());
 		String fileUrl = userInput.fileUrl();
 
-		JarParseService jarParseService = new JarParseService(repository);
+		int parallelism = readIntInput(userInput, PARALLELISM, 1);
+		parallelism = Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+		int batchSize = Math.max(0, readIntInput(userInput, BATCH_SIZE, 0));
+		int batchMemoryLimit = readIntInput(userInput, BATCH_MEMORY_LIMIT, 64);
+		long maxBatchBytes = batchMemoryLimit > 0 ? batchMemoryLimit * 1024L * 1024L : Long.MAX_VALUE;
+		boolean incremental = Boolean.parseBoolean(userInput.properties().getOrDefault(INCREMENTAL, "false"));
+		boolean nestedArchives = Boolean.parseBoolean(userInput.properties().getOrDefault(NESTED_ARCHIVES, "false"));
+		ParseProfile profile = ParseProfile.parse(userInput.properties().get(PARSE_PROFILE));
+		// dropping resource contents saves reading them, but leaves incremental runs nothing to compare
+		boolean resourceContents = Boolean.parseBoolean(
+				userInput.properties().getOrDefault(RESOURCE_CONTENTS, "true").trim());
+		List<String> archives = new ArrayList<>();
+		archives.add(fileUrl);
+		for (String path : userInput.properties().getOrDefault(ADDITIONAL_ARCHIVES, "").split(",")) {
+			if (!path.isBlank()) {
+				archives.add(path.trim());
+			}
+		}
+
+		if (incremental && nestedArchives) {
+			// nested entries carry no checksum to compare before they are read; rather than dropping one of the
+			// inputs, which would remove the files an earlier ingest stored from nested archives, nothing is parsed
+			return textResult(projectId, "JAR Parse Plugin - Execution Summary\n"
+					+ "====================================\n\n"
+					+ "Project ID: " + projectId + "\n"
+					+ "JAR File: " + fileUrl + "\n\n"
+					+ "The JAR file was not parsed: skipping unchanged entries cannot be combined with ingesting\n"
+					+ "nested JARs. Set \"" + INCREMENTAL + "\" or \"" + NESTED_ARCHIVES + "\" to false.");
+		}
+		EntityMetricsWriter entityMetrics = new EntityMetricsWriter(graphDBFacade, run);
+		JarParseService jarParseService = new JarParseService(repository,
+				new JarParseOptions(parallelism, batchSize, maxBatchBytes, incremental, nestedArchives,
+						profile, resourceContents), metrics, run, entityMetrics);
 
 		int filesProcessed = 0;
 		int entitiesCreated = 0;
+		int batchesSaved = 0;
+		int entitiesMeasured = 0;
+		JarParseSummary summary = null;
 
 		var projectOptional = repository.findById(projectId);
 		if (projectOptional.isPresent()) {
 			var project = projectOptional.get();
-			jarParseService.parse(project, fileUrl);
+			try {
+				summary = jarParseService.parse(project, archives);
 
-			if (project.getFiles() != null) {
-				filesProcessed = project.getFiles().size();
-				entitiesCreated = project.getFiles().stream()
-					.mapToInt(file -> file.getEntities() != null ? file.getEntities().size() : 0)
-					.sum();
+				filesProcessed = summary.filesProcessed();
+				entitiesCreated = summary.entitiesCreated();
+				batchesSaved = summary.batchesSaved();
+
+				// size metrics measured while parsing, so output plugins can answer size queries without parsing
+				entitiesMeasured = metrics.call(PluginRunMetrics.PERSIST, () -> entityMetrics.write(projectId));
+			} finally {
+				// also after a failed run, as some batches may have been saved
+				PluginResultCache.shared().invalidate(projectId);
 			}
 		}
 
@@ -55,19 +135,50 @@ public class JarParser implements PluginSova {
 		summaryText.append("====================================\n\n");
 		summaryText.append("Project ID: ").append(projectId).append("\n");
 		summaryText.append("JAR File: ").append(fileUrl).append("\n");
+		for (String archive : archives.subList(1, archives.size())) {
+			summaryText.append("Additional JAR File: ").append(archive).append("\n");
+		}
+		summaryText.append("Nested JARs ingested: ").append(nestedArchives).append("\n");
+		summaryText.append("Ingest profile: ").append(profile).append("\n");
+		summaryText.append("Resource contents stored: ").append(resourceContents).append("\n");
+		summaryText.append("Parallelism: ").append(parallelism).append("\n");
 		summaryText.append("Files processed: ").append(filesProcessed).append("\n");
-		summaryText.append("Entities created: ").append(entitiesCreated).append("\n\n");
+		summaryText.append("Entities created: ").append(entitiesCreated).append("\n");
+		summaryText.append("Project saves: ").append(batchesSaved).append("\n");
+		summaryText.append("Entities measured: ").append(entitiesMeasured).append("\n");
+		if (incremental && summary != null) {
+			summaryText.append("Unchanged entries: ").append(summary.unchangedEntries()).append("\n");
+			summaryText.append("Changed entries: ").append(summary.changedEntries()).append("\n");
+			summaryText.append("Added entries: ").append(summary.addedEntries()).append("\n");
+			summaryText.append("Removed entries: ").append(summary.removedEntries()).append("\n");
+		}
+		summaryText.append("\n");
 		summaryText.append("Executed steps:\n");
 		summaryText.append("- Extracted and parsed JAR file contents\n");
 		summaryText.append("- Identified Java source files and resources\n");
 		summaryText.append("- Created entities for classes, interfaces, enums, etc.\n");
 		summaryText.append("- Extracted members (fields, methods, constructors)\n");
-		summaryText.append("- Saved project structure to repository\n\n");
-		summaryText.append("The JAR file has been successfully parsed and integrated\n");
-		summaryText.append("into the project structure for further analysis.");
+		summaryText.append("- Saved project structure to repository\n");
+		summaryText.append("- Stored size metrics on entities\n\n");
+		if (run.isComplete()) {
+			summaryText.append("The JAR file has been successfully parsed and integrated\n");
+			summaryText.append("into the project structure for further analysis.");
+		} else {
+			summaryText.append(run.describeStop());
+		}
+		if (metrics.parseFailures() > 0) {
+			summaryText.append("\n\nFiles that could not be parsed: ").append(metrics.parseFailures());
+		}
+		if (PluginRunMetrics.isTimingTableRequested(userInput)) {
+			summaryText.append("\n\n").append(metrics.toText());
+		}
+
+		return textResult(projectId, summaryText.toString());
+	}
 
+	private PluginResult textResult(String projectId, String text) {
 		Map<String, Object> data = Map.of(
-			"text", summaryText.toString()
+			"text", text
 		);
 
 		Map<String, Object> config = Map.of(
@@ -85,4 +196,12 @@ public class JarParser implements PluginSova {
 
 		return new PluginResult(projectId, getName(), new GuiComponentData(FrontendComponentType.Text, data, config));
 	}
+
+	private int readIntInput(UserInput userInput, String key, int defaultValue) {
+		try {
+			return Integer.parseInt(userInput.properties().getOrDefault(key, String.valueOf(defaultValue)));
+		} catch (NumberFormatException e) {
+			return defaultValue; // fallback default
+		}
+	}
 }
@@ -0,0 +1,109 @@
+package edu.mimuw.plugin.summary;
+
+/**
+ * Prepares a source for {@link ParseProfile#SKELETON skeleton} parsing: everything between the braces of
+ * members of top-level types, such as method bodies, initializers and nested type bodies, comments
+ * included, is replaced with spaces. Comments outside of them are kept, so that the parser attributes
+ * leading comments to declarations as it does for the whole source. Line terminators are kept, so offsets
+ * and line numbers in the stripped text are those of the original, and the braces themselves are kept,
+ * so the text still parses.
+ */
+final class BodyStripper {
+
+	private enum State {
+		CODE, LINE_COMMENT, BLOCK_COMMENT, STRING, CHAR, TEXT_BLOCK
+	}
+
+	private BodyStripper() {
+	}
+
+	static String strip(String content) {
+		char[] text = content.toCharArray();
+		State state = State.CODE;
+		int depth = 0;
+		for (int i = 0; i < text.length; i++) {
+			char c = text[i];
+			if (c == '\r' || c == '\n') {
+				if (state == State.LINE_COMMENT) {
+					state = State.CODE;
+				}
+				continue;
+			}
+			// braces opened inside a type body enclose what is blanked
+			boolean blank = depth > 1;
+
+			switch (state) {
+				case LINE_COMMENT -> {
+				}
+				case BLOCK_COMMENT -> {
+					if (c == '*' && next(text, i) == '/') {
+						blank(text, i++, blank);
+						state = State.CODE;
+					}
+				}
+				case STRING, CHAR -> {
+					if (c == '\\') {
+						blank(text, i++, blank);
+					} else if (c == (state == State.STRING ? '"' : '\'')) {
+						state = State.CODE;
+					}
+				}
+				case TEXT_BLOCK -> {
+					if (c == '\\') {
+						blank(text, i++, blank);
+					} else if (c == '"' && startsWith(text, i, "\"\"\"")) {
+						blank(text, i++, blank);
+						blank(text, i++, blank);
+						state = State.CODE;
+					}
+				}
+				case CODE -> {
+					if (c == '/' && (next(text, i) == '/' || next(text, i) == '*')) {
+						state = next(text, i) == '/' ? State.LINE_COMMENT : State.BLOCK_COMMENT;
+						blank(text, i++, blank);
+					} else if (c == '"') {
+						if (startsWith(text, i, "\"\"\"")) {
+							blank(text, i++, blank);
+							blank(text, i++, blank);
+							state = State.TEXT_BLOCK;
+						} else {
+							state = State.STRING;
+						}
+					} else if (c == '\'') {
+						state = State.CHAR;
+					} else if (c == '{') {
+						depth++;
+						blank = depth > 2;
+					} else if (c == '}') {
+						blank = depth > 2;
+						depth = Math.max(0, depth - 1);
+					}
+				}
+			}
+			blank(text, i, blank);
+		}
+		return new String(text);
+	}
+
+	private static void blank(char[] text, int i, boolean blank) {
+		if (blank && i < text.length && text[i] != '\r' && text[i] != '\n') {
+			text[i] = ' ';
+		}
+	}
+
+	private static char next(char[] text, int i) {
+		return i + 1 < text.length ? text[i + 1] : 0;
+	}
+
+	private static boolean startsWith(char[] text, int i, String prefix) {
+		if (i + prefix.length() > text.length) {
+			return false;
+		}
+		for (int j = 0; j < prefix.length(); j++) {
+			if (text[i + j] != prefix.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
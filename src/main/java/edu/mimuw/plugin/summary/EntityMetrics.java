@@ -0,0 +1,54 @@
+package edu.mimuw.plugin.summary;
+
+import java.util.Map;
+
+import edu.mimuw.plugin.summary.SourceSummary.TypeSummary;
+import edu.mimuw.sovaide.domain.model.MemberKind;
+
+/**
+ * Names of the size metrics stored on {@code Entity} nodes at ingest time, so that output plugins can
+ * answer size queries from node properties instead of parsing entity sources.
+ */
+public final class EntityMetrics {
+
+	/** Package of the declared type, the same property {@code ClassesImportRelationBuilder} sets. */
+	public static final String PACKAGE_NAME = "packageName";
+
+	/** Kind of the declared type, as an {@code EntityKind} name. */
+	public static final String TYPE_KIND = "typeKind";
+
+	/** Lines of the whole file the entity is declared in. */
+	public static final String FILE_LINE_COUNT = "fileLineCount";
+
+	/** Lines spanned by the type declaration itself. */
+	public static final String LINE_COUNT = "lineCount";
+
+	public static final String MEMBER_COUNT = "memberCount";
+
+	public static final String METHOD_COUNT = "methodCount";
+
+	public static final String FIELD_COUNT = "fieldCount";
+
+	private EntityMetrics() {
+	}
+
+	public static Map<String, Object> of(SourceSummary summary, TypeSummary type) {
+		return Map.of(
+				PACKAGE_NAME, summary.packageName(),
+				TYPE_KIND, type.kind().name(),
+				FILE_LINE_COUNT, summary.lineCount(),
+				LINE_COUNT, type.lineCount(),
+				MEMBER_COUNT, type.members().size(),
+				METHOD_COUNT, (int) type.methodCount(),
+				FIELD_COUNT, (int) type.members().stream().filter(m -> m.kind() == MemberKind.FIELD).count()
+		);
+	}
+
+	public static boolean isPresent(Map<String, Object> properties) {
+		return properties.get(FILE_LINE_COUNT) instanceof Number && properties.get(TYPE_KIND) != null;
+	}
+
+	public static int intValue(Map<String, Object> properties, String metric) {
+		return properties.get(metric) instanceof Number number ? number.intValue() : 0;
+	}
+}
@@ -0,0 +1,31 @@
+package edu.mimuw.plugin.summary;
+
+/**
+ * How much of a source is parsed when it is summarized.
+ */
+public enum ParseProfile {
+
+	/**
+	 * The whole source is parsed, and leading comments are attributed to the declarations they precede,
+	 * so type ranges and member sources include their comments.
+	 */
+	FULL,
+
+	/**
+	 * Method bodies, initializers and the comments inside them are blanked out before parsing.
+	 * Declarations, imports and their source ranges, leading comments included, are found as with
+	 * {@link #FULL}, so metrics do not depend on the profile, but the source of a method or constructor
+	 * is its signature only.
+	 */
+	SKELETON;
+
+	/**
+	 * Reads the profile from user input, falling back to {@link #FULL} for anything unknown.
+	 */
+	public static ParseProfile parse(String value) {
+		if (value != null && value.trim().equalsIgnoreCase(SKELETON.name())) {
+			return SKELETON;
+		}
+		return FULL;
+	}
+}
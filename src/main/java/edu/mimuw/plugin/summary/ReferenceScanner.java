@@ -0,0 +1,389 @@
+package edu.mimuw.plugin.summary;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lexical scan for the names a source refers to without qualifying them, such as types from its own
+ * package or from packages imported on demand. Like {@link SourceScanner} it only tokenizes comments,
+ * literals, braces and identifiers, so it works on sources of any ingest profile and on sources that
+ * do not parse.
+ * <p>
+ * The names found are a superset of the referenced types: variables, fields and other identifiers are
+ * collected too, except for method names and names in the scope of a type parameter of the same name.
+ * Names qualified by a dot are collected separately, whole. Resolving them against the types that exist
+ * keeps only the references.
+ * <p>
+ * The names are also collected for each top-level type on its own, from the end of the type before it
+ * to the end of its body, so that the annotations and header of a type count as its own.
+ */
+public final class ReferenceScanner {
+
+	/**
+	 * @param simpleNames    names used without qualification, excluding keywords, declared type names and
+	 *                       type parameters
+	 * @param qualifiedNames dotted names such as {@code a.b.Type.member}, which may start with a package,
+	 *                       a type or a variable
+	 * @param memberTypes    names of the member types declared directly in each top-level type
+	 * @param topLevelTypes  the references of each top-level type, by its name
+	 */
+	public record ScannedReferences(Set<String> simpleNames, Set<String> qualifiedNames,
+			Map<String, Set<String>> memberTypes, Map<String, ScannedReferences> topLevelTypes) {
+
+		public Set<String> memberTypes(String topLevelType) {
+			return memberTypes.getOrDefault(topLevelType, Set.of());
+		}
+
+		/**
+		 * @return the references made by the given top-level type, or those of the whole source if the
+		 *         scan did not find the type
+		 */
+		public ScannedReferences topLevelType(String name) {
+			return topLevelTypes.getOrDefault(name, this);
+		}
+	}
+
+	private enum State {
+		CODE, LINE_COMMENT, BLOCK_COMMENT, STRING, CHAR, TEXT_BLOCK
+	}
+
+	private static final Set<String> KEYWORDS = Set.copyOf(List.of(
+			"abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+			"continue", "default", "do", "double", "else", "enum", "exports", "extends", "false", "final",
+			"finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int", "interface",
+			"long", "module", "native", "new", "non", "null", "open", "opens", "package", "permits", "private",
+			"protected", "provides", "public", "record", "requires", "return", "sealed", "short", "static",
+			"strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "to", "transient",
+			"transitive", "true", "try", "uses", "var", "void", "volatile", "when", "while", "with", "yield"));
+
+	private final String content;
+
+	private final Set<String> simpleNames = new HashSet<>();
+
+	private final Set<String> qualifiedNames = new HashSet<>();
+
+	private final Map<String, Set<String>> memberTypes = new HashMap<>();
+
+	private final Map<String, TypeReferences> typeReferences = new HashMap<>();
+
+	// names since the end of the last top-level type, which belong to the next one declared
+	private TypeReferences currentTypeReferences = new TypeReferences();
+
+	private final Deque<TypeParameterScope> typeParameterScopes = new ArrayDeque<>();
+
+	// the dotted name being read, null outside of one
+	private StringBuilder qualifiedName;
+
+	private int depth;
+
+	private char previousCodeChar;
+
+	private String previousWord = "";
+
+	private String topLevelType;
+
+	private boolean inDirective;
+
+	private boolean afterDeclaredName;
+
+	private boolean afterAnnotation;
+
+	private ReferenceScanner(String content) {
+		this.content = content;
+	}
+
+	public static ScannedReferences scan(String content) {
+		if (content == null || content.isEmpty()) {
+			return new ScannedReferences(Set.of(), Set.of(), Map.of(), Map.of());
+		}
+		return new ReferenceScanner(content).run();
+	}
+
+	private ScannedReferences run() {
+		State state = State.CODE;
+		int length = content.length();
+		for (int i = 0; i < length; i++) {
+			char c = content.charAt(i);
+			switch (state) {
+				case LINE_COMMENT -> {
+					if (c == '\r' || c == '\n') {
+						state = State.CODE;
+					}
+				}
+				case BLOCK_COMMENT -> {
+					if (c == '*' && next(i) == '/') {
+						i++;
+						state = State.CODE;
+					}
+				}
+				case STRING, CHAR -> {
+					if (c == '\\') {
+						i++;
+					} else if (c == (state == State.STRING ? '"' : '\'')) {
+						state = State.CODE;
+					}
+				}
+				case TEXT_BLOCK -> {
+					if (c == '\\') {
+						i++;
+					} else if (c == '"' && content.startsWith("\"\"\"", i)) {
+						i += 2;
+						state = State.CODE;
+					}
+				}
+				case CODE -> {
+					if (Character.isWhitespace(c)) {
+						continue;
+					}
+					if (c == '/' && (next(i) == '/' || next(i) == '*')) {
+						state = next(i) == '/' ? State.LINE_COMMENT : State.BLOCK_COMMENT;
+						i++;
+						continue;
+					}
+
+					if (c == '"' || c == '\'') {
+						endQualifiedName();
+						afterDeclaredName = false;
+						afterAnnotation = false;
+					}
+					if (c == '"') {
+						if (content.startsWith("\"\"\"", i)) {
+							state = State.TEXT_BLOCK;
+							i += 2;
+						} else {
+							state = State.STRING;
+						}
+					} else if (c == '\'') {
+						state = State.CHAR;
+					} else if (Character.isJavaIdentifierStart(c)) {
+						int end = i + 1;
+						while (end < length && Character.isJavaIdentifierPart(content.charAt(end))) {
+							end++;
+						}
+						word(content.substring(i, end), end);
+						i = end - 1;
+					} else {
+						symbol(c, i);
+					}
+					previousCodeChar = c;
+				}
+			}
+		}
+		endQualifiedName();
+		Map<String, ScannedReferences> topLevelTypes = new HashMap<>();
+		typeReferences.forEach((type, references) -> topLevelTypes.put(type, new ScannedReferences(
+				references.simpleNames(), references.qualifiedNames(),
+				Map.of(type, memberTypes.getOrDefault(type, Set.of())), Map.of())));
+		return new ScannedReferences(simpleNames, qualifiedNames, memberTypes, topLevelTypes);
+	}
+
+	private char next(int i) {
+		return i + 1 < content.length() ? content.charAt(i + 1) : 0;
+	}
+
+	/**
+	 * @param end offset just past the word
+	 */
+	private void word(String word, int end) {
+		String previous = previousWord;
+		boolean annotation = previousCodeChar == '@';
+		previousWord = word;
+		afterDeclaredName = false;
+		if (inDirective) {
+			// package and import declarations are resolved from the summary
+			previousWord = "";
+			return;
+		}
+		if (previousCodeChar == '.') {
+			// the rest of a qualified name, and a qualified keyword as in Foo.class declares nothing
+			if (qualifiedName != null) {
+				qualifiedName.append('.').append(word);
+			}
+			previousWord = "";
+			return;
+		}
+		endQualifiedName();
+		afterAnnotation = annotation;
+		if (isDeclarationKeyword(previous)) {
+			if (depth == 0) {
+				topLevelType = word;
+				typeReferences.putIfAbsent(word, currentTypeReferences);
+			} else if (depth == 1 && topLevelType != null) {
+				memberTypes.computeIfAbsent(topLevelType, type -> new HashSet<>()).add(word);
+			}
+			afterDeclaredName = true;
+			return;
+		}
+		if (depth == 0 && (word.equals("package") || word.equals("import"))) {
+			inDirective = true;
+			return;
+		}
+		if (KEYWORDS.contains(word)) {
+			return;
+		}
+		if (nextCodeChar(end) == '.') {
+			qualifiedName = new StringBuilder(word);
+		}
+		if (nextCodeChar(end) == '(' && !previous.equals("new") && !annotation) {
+			// a method call or declaration
+			return;
+		}
+		if (!isTypeParameter(word)) {
+			simpleNames.add(word);
+			currentTypeReferences.simpleNames().add(word);
+		}
+	}
+
+	private void endQualifiedName() {
+		if (qualifiedName != null && qualifiedName.indexOf(".") > 0) {
+			qualifiedNames.add(qualifiedName.toString());
+			currentTypeReferences.qualifiedNames().add(qualifiedName.toString());
+		}
+		qualifiedName = null;
+	}
+
+	private boolean isTypeParameter(String word) {
+		for (TypeParameterScope scope : typeParameterScopes) {
+			if (scope.names().contains(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isDeclarationKeyword(String word) {
+		return switch (word) {
+			case "class", "interface", "enum", "record" -> true;
+			default -> false;
+		};
+	}
+
+	private char nextCodeChar(int from) {
+		for (int i = from; i < content.length(); i++) {
+			if (!Character.isWhitespace(content.charAt(i))) {
+				return content.charAt(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param i offset of the symbol
+	 */
+	private void symbol(char c, int i) {
+		// a dot continues a qualified name, unless it is part of an ellipsis
+		if (c != '.' || previousCodeChar == '.') {
+			endQualifiedName();
+		}
+		switch (c) {
+			case '{' -> {
+				TypeParameterScope scope = typeParameterScopes.peek();
+				if (scope != null && !scope.opened() && scope.depth() == depth) {
+					typeParameterScopes.pop();
+					typeParameterScopes.push(new TypeParameterScope(scope.names(), scope.depth(), true));
+				}
+				depth++;
+			}
+			case '}' -> {
+				depth = Math.max(0, depth - 1);
+				if (depth == 0) {
+					currentTypeReferences = new TypeReferences();
+				}
+				while (!typeParameterScopes.isEmpty() && typeParameterScopes.peek().depth() >= depth
+						&& (typeParameterScopes.peek().opened() || typeParameterScopes.peek().depth() > depth)) {
+					typeParameterScopes.pop();
+				}
+			}
+			case ';' -> {
+				inDirective = false;
+				// an abstract method ends without a body
+				TypeParameterScope scope = typeParameterScopes.peek();
+				if (scope != null && !scope.opened() && scope.depth() == depth) {
+					typeParameterScopes.pop();
+				}
+			}
+			case '<' -> {
+				if (afterDeclaredName || isModifier(previousWord) || afterAnnotation && !previousWord.isEmpty()
+						|| previousCodeChar == '{' || previousCodeChar == '}' || previousCodeChar == ';') {
+					// type parameters of a type, or of a method or constructor declared with modifiers
+					Set<String> names = typeParameterNames(i + 1);
+					if (!names.isEmpty()) {
+						typeParameterScopes.push(new TypeParameterScope(names, depth, false));
+					}
+				}
+			}
+			default -> {
+			}
+		}
+		previousWord = "";
+		afterDeclaredName = false;
+		afterAnnotation = false;
+	}
+
+	private boolean isModifier(String word) {
+		return switch (word) {
+			case "public", "protected", "private", "static", "final", "abstract", "synchronized", "native",
+				 "default", "strictfp" -> true;
+			default -> false;
+		};
+	}
+
+	/**
+	 * Reads the names declared by a type parameter list, skipping their bounds and annotations.
+	 *
+	 * @param from offset just past the opening angle bracket
+	 * @return the names, or none if the brackets do not enclose type parameters
+	 */
+	private Set<String> typeParameterNames(int from) {
+		Set<String> names = new HashSet<>();
+		int angles = 1;
+		boolean expectingName = true;
+		boolean annotation = false;
+		for (int i = from; i < content.length() && angles > 0; i++) {
+			char c = content.charAt(i);
+			if (Character.isJavaIdentifierStart(c)) {
+				int end = i + 1;
+				while (end < content.length() && Character.isJavaIdentifierPart(content.charAt(end))) {
+					end++;
+				}
+				if (annotation) {
+					annotation = false;
+				} else if (angles == 1 && expectingName) {
+					names.add(content.substring(i, end));
+					expectingName = false;
+				}
+				i = end - 1;
+			} else if (c == '@') {
+				annotation = true;
+			} else if (c == '<') {
+				angles++;
+			} else if (c == '>') {
+				angles--;
+			} else if (c == ',' && angles == 1) {
+				expectingName = true;
+			} else if (c == '(' || c == ')' || c == '{' || c == '}' || c == ';' || c == '=' || c == '"') {
+				return Set.of();
+			}
+		}
+		return angles == 0 ? names : Set.of();
+	}
+
+	private record TypeReferences(Set<String> simpleNames, Set<String> qualifiedNames) {
+
+		TypeReferences() {
+			this(new HashSet<>(), new HashSet<>());
+		}
+	}
+
+	/**
+	 * Type parameters declared at the given brace depth, in scope until the body that follows them closes,
+	 * or until the end of the declaration if it has none.
+	 */
+	private record TypeParameterScope(Set<String> names, int depth, boolean opened) {
+	}
+}
@@ -0,0 +1,292 @@
+package edu.mimuw.plugin.summary;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import edu.mimuw.sovaide.domain.model.EntityKind;
+
+/**
+ * Lexical alternative to parsing for size queries. Only comments, string and character literals, text
+ * blocks and braces are tokenized, which is enough to find the top-level type declarations, the lines
+ * they span and which lines hold code, comments or nothing at all. Sources that would not parse are
+ * scanned on a best-effort basis instead of being rejected.
+ */
+public final class SourceScanner {
+
+	/**
+	 * @param packageName package declared by the file, empty for the default package
+	 * @param lineCount   number of lines in the file, not counting trailing empty lines
+	 * @param lines       classification of those lines
+	 * @param types       top-level type declarations in source order
+	 */
+	public record ScannedSource(String packageName, int lineCount, LineCounts lines, List<ScannedType> types) {
+	}
+
+	/**
+	 * @param beginLine first line of the declaration, including its leading comment
+	 * @param endLine   line of the closing brace of the declaration
+	 */
+	public record ScannedType(String name, EntityKind kind, int beginLine, int endLine, LineCounts lines) {
+
+		public int lineCount() {
+			return endLine - beginLine + 1;
+		}
+	}
+
+	/**
+	 * A line counts as code if it holds anything outside a comment, as a comment if it holds only
+	 * comments, and as blank otherwise.
+	 */
+	public record LineCounts(int code, int comment, int blank) {
+	}
+
+	private enum State {
+		CODE, LINE_COMMENT, BLOCK_COMMENT, STRING, CHAR, TEXT_BLOCK
+	}
+
+	private final String content;
+
+	private final BitSet codeLines = new BitSet();
+
+	private final BitSet commentLines = new BitSet();
+
+	private final List<ScannedType> types = new ArrayList<>();
+
+	private final StringBuilder packageName = new StringBuilder();
+
+	private int line = 1;
+
+	private int depth;
+
+	private int parenDepth;
+
+	private char previousCodeChar;
+
+	// the top-level declaration currently being read
+	private int commentLine;
+
+	private int declarationLine;
+
+	private EntityKind kind;
+
+	private String name;
+
+	private boolean readingPackage;
+
+	private boolean inBody;
+
+	private SourceScanner(String content) {
+		this.content = content;
+	}
+
+	public static ScannedSource scan(String content) {
+		if (content == null || content.isEmpty()) {
+			return new ScannedSource("", 0, new LineCounts(0, 0, 0), List.of());
+		}
+		return new SourceScanner(content).run();
+	}
+
+	private ScannedSource run() {
+		State state = State.CODE;
+		int length = content.length();
+		for (int i = 0; i < length; i++) {
+			char c = content.charAt(i);
+			if (c == '\r' || c == '\n') {
+				if (c == '\r' && i + 1 < length && content.charAt(i + 1) == '\n') {
+					i++;
+				}
+				if (state == State.LINE_COMMENT) {
+					state = State.CODE;
+				}
+				line++;
+				if (state == State.BLOCK_COMMENT) {
+					commentLines.set(line);
+				} else if (state == State.TEXT_BLOCK) {
+					codeLines.set(line);
+				}
+				continue;
+			}
+
+			switch (state) {
+				case LINE_COMMENT -> commentLines.set(line);
+				case BLOCK_COMMENT -> {
+					commentLines.set(line);
+					if (c == '*' && next(i) == '/') {
+						i++;
+						state = State.CODE;
+					}
+				}
+				case STRING, CHAR -> {
+					codeLines.set(line);
+					if (c == '\\') {
+						i++;
+					} else if (c == (state == State.STRING ? '"' : '\'')) {
+						state = State.CODE;
+					}
+				}
+				case TEXT_BLOCK -> {
+					codeLines.set(line);
+					if (c == '\\') {
+						i++;
+					} else if (c == '"' && content.startsWith("\"\"\"", i)) {
+						i += 2;
+						state = State.CODE;
+					}
+				}
+				case CODE -> {
+					if (Character.isWhitespace(c)) {
+						continue;
+					}
+					if (c == '/' && (next(i) == '/' || next(i) == '*')) {
+						state = next(i) == '/' ? State.LINE_COMMENT : State.BLOCK_COMMENT;
+						commentLines.set(line);
+						if (depth == 0 && declarationLine == 0 && !readingPackage) {
+							commentLine = line;
+						}
+						i++;
+						continue;
+					}
+
+					codeLines.set(line);
+					if (c == '"') {
+						if (content.startsWith("\"\"\"", i)) {
+							state = State.TEXT_BLOCK;
+							i += 2;
+						} else {
+							state = State.STRING;
+						}
+					} else if (c == '\'') {
+						state = State.CHAR;
+					} else if (Character.isJavaIdentifierStart(c)) {
+						int end = i + 1;
+						while (end < length && Character.isJavaIdentifierPart(content.charAt(end))) {
+							end++;
+						}
+						if (depth == 0) {
+							word(content.substring(i, end));
+						}
+						i = end - 1;
+					} else {
+						symbol(c);
+					}
+					previousCodeChar = c;
+				}
+			}
+		}
+
+		int lineCount = SourceSummarizer.countLines(content);
+		return new ScannedSource(packageName.toString(), lineCount, countLines(1, lineCount), List.copyOf(types));
+	}
+
+	private char next(int i) {
+		return i + 1 < content.length() ? content.charAt(i + 1) : 0;
+	}
+
+	private void word(String word) {
+		startDeclaration();
+		if (readingPackage) {
+			packageName.append(word);
+		} else if (parenDepth > 0 || previousCodeChar == '.') {
+			// annotation arguments and qualified names such as Foo.class
+		} else if (kind != null) {
+			if (name == null) {
+				name = word;
+			}
+		} else if (word.equals("package")) {
+			readingPackage = true;
+		} else {
+			kind = switch (word) {
+				case "class" -> EntityKind.CLASS;
+				case "interface" -> previousCodeChar == '@' ? EntityKind.ANNOTATION : EntityKind.INTERFACE;
+				case "enum" -> EntityKind.ENUM;
+				case "record" -> EntityKind.RECORD;
+				default -> null;
+			};
+		}
+	}
+
+	private void symbol(char c) {
+		if (depth == 0) {
+			startDeclaration();
+		}
+		switch (c) {
+			case '(' -> {
+				if (depth == 0) {
+					parenDepth++;
+				}
+			}
+			case ')' -> {
+				if (depth == 0 && parenDepth > 0) {
+					parenDepth--;
+				}
+			}
+			case '{' -> {
+				if (depth == 0 && parenDepth == 0 && name != null) {
+					inBody = true;
+				}
+				depth++;
+			}
+			case '}' -> {
+				if (depth > 0) {
+					depth--;
+				}
+				if (depth == 0 && inBody) {
+					int beginLine = commentLine > 0 ? commentLine : declarationLine;
+					types.add(new ScannedType(name, kind, beginLine, line, countLines(beginLine, line)));
+					endDeclaration();
+				}
+			}
+			case ';' -> {
+				if (depth == 0 && parenDepth == 0) {
+					endDeclaration();
+				}
+			}
+			case '.' -> {
+				if (readingPackage) {
+					packageName.append('.');
+				}
+			}
+			default -> {
+			}
+		}
+	}
+
+	private void startDeclaration() {
+		if (declarationLine == 0) {
+			declarationLine = line;
+			// like the parser, a comment separated from the declaration by an empty line is not its own
+			for (int l = declarationLine - 1; commentLine > 0 && l > commentLine; l--) {
+				if (!commentLines.get(l)) {
+					commentLine = 0;
+				}
+			}
+		}
+	}
+
+	private void endDeclaration() {
+		commentLine = 0;
+		declarationLine = 0;
+		parenDepth = 0;
+		kind = null;
+		name = null;
+		readingPackage = false;
+		inBody = false;
+	}
+
+	private LineCounts countLines(int from, int to) {
+		int code = 0;
+		int comment = 0;
+		int blank = 0;
+		for (int l = from; l <= to; l++) {
+			if (codeLines.get(l)) {
+				code++;
+			} else if (commentLines.get(l)) {
+				comment++;
+			} else {
+				blank++;
+			}
+		}
+		return new LineCounts(code, comment, blank);
+	}
+}
@@ -0,0 +1,161 @@
+package edu.mimuw.plugin.summary;
+
+import java.util.List;
+
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.nodeTypes.NodeWithName;
+
+import edu.mimuw.plugin.summary.SourceSummary.ImportSummary;
+import edu.mimuw.plugin.summary.SourceSummary.MemberSummary;
+import edu.mimuw.plugin.summary.SourceSummary.TypeSummary;
+import edu.mimuw.sovaide.domain.model.EntityKind;
+import edu.mimuw.sovaide.domain.model.MemberKind;
+
+/**
+ * Extracts a {@link SourceSummary} from a parsed compilation unit.
+ */
+final class SourceSummarizer {
+
+	private SourceSummarizer() {
+	}
+
+	/**
+	 * @param content the original source; with {@link ParseProfile#SKELETON} the unit was parsed from its
+	 *                stripped copy, whose offsets are the same
+	 */
+	static SourceSummary summarize(CompilationUnit unit, String content, ParseProfile profile) {
+		SourceText source = new SourceText(content);
+
+		String packageName = unit.getPackageDeclaration()
+				.map(NodeWithName::getNameAsString)
+				.orElse("");
+
+		List<ImportSummary> imports = unit.getImports().stream()
+				.map(im -> new ImportSummary(im.getNameAsString(), im.isStatic(), im.isAsterisk()))
+				.toList();
+
+		List<TypeSummary> types = unit.getTypes().stream()
+				.map(type -> summarizeType(type, source, profile))
+				.toList();
+
+		return new SourceSummary(packageName, countLines(content), imports, types);
+	}
+
+	/**
+	 * Counts lines the same way as splitting on line terminators does, i.e. trailing empty lines are
+	 * not counted.
+	 */
+	static int countLines(String content) {
+		if (content == null || content.isEmpty()) {
+			return 0;
+		}
+		int line = 1;
+		int lastNonEmptyLine = 0;
+		boolean lineEmpty = true;
+		for (int i = 0; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (c == '\r' || c == '\n') {
+				if (c == '\r' && i + 1 < content.length() && content.charAt(i + 1) == '\n') {
+					i++;
+				}
+				line++;
+				lineEmpty = true;
+			} else if (lineEmpty) {
+				lineEmpty = false;
+				lastNonEmptyLine = line;
+			}
+		}
+		// a text without any line terminator is a single line
+		return line == 1 ? 1 : lastNonEmptyLine;
+	}
+
+	private static TypeSummary summarizeType(TypeDeclaration<?> type, SourceText source, ParseProfile profile) {
+		EntityKind kind = findEntityKind(type);
+		Range range = rangeWithComment(type);
+		List<MemberSummary> members = (kind == EntityKind.CLASS || kind == EntityKind.INTERFACE) ?
+				type.getMembers().stream()
+						.filter(member -> member.getRange().isPresent())
+						.map(member -> summarizeMember(member, source, profile))
+						.toList() :
+				List.of();
+		return new TypeSummary(type.getNameAsString(), kind,
+				range != null ? range.begin.line : 0,
+				range != null ? range.end.line : 0,
+				members);
+	}
+
+	private static MemberSummary summarizeMember(BodyDeclaration<?> member, SourceText source, ParseProfile profile) {
+		Range range = rangeWithComment(member);
+		int begin = source.offset(range.begin);
+		int end = Math.max(begin, source.endOffset(range.end));
+		if (profile == ParseProfile.SKELETON) {
+			end = Math.max(begin, signatureEnd(member, source, end));
+		}
+		return new MemberSummary(findMemberKind(member), begin, end);
+	}
+
+	// the body of a skeleton was blanked out, so a method or constructor keeps only its signature
+	private static int signatureEnd(BodyDeclaration<?> member, SourceText source, int end) {
+		Range body = null;
+		if (member.isMethodDeclaration()) {
+			body = member.asMethodDeclaration().getBody().flatMap(Node::getRange).orElse(null);
+		} else if (member.isConstructorDeclaration()) {
+			body = member.asConstructorDeclaration().getBody().getRange().orElse(null);
+		}
+		if (body == null) {
+			return end;
+		}
+		int signatureEnd = source.offset(body.begin);
+		while (signatureEnd > 0 && Character.isWhitespace(source.charAt(signatureEnd - 1))) {
+			signatureEnd--;
+		}
+		return signatureEnd;
+	}
+
+	private static Range rangeWithComment(Node node) {
+		Range range = node.getRange().orElse(null);
+		if (range == null) {
+			return null;
+		}
+		return node.getComment()
+				.flatMap(Node::getRange)
+				.map(comment -> comment.withEnd(range.end))
+				.orElse(range);
+	}
+
+	private static MemberKind findMemberKind(BodyDeclaration<?> member) {
+		if (member.isFieldDeclaration()) {
+			return MemberKind.FIELD;
+		} else if (member.isMethodDeclaration()) {
+			return MemberKind.METHOD;
+		} else if (member.isConstructorDeclaration()) {
+			return MemberKind.CONSTRUCTOR;
+		} else {
+			return MemberKind.OTHER;
+		}
+	}
+
+	private static EntityKind findEntityKind(TypeDeclaration<?> type) {
+		if (type.isClassOrInterfaceDeclaration()) {
+			ClassOrInterfaceDeclaration coid = type.asClassOrInterfaceDeclaration();
+			if (coid.isInterface()) {
+				return EntityKind.INTERFACE;
+			} else {
+				return EntityKind.CLASS;
+			}
+		} else if (type.isEnumDeclaration()) {
+			return EntityKind.ENUM;
+		} else if (type.isAnnotationDeclaration()) {
+			return EntityKind.ANNOTATION;
+		} else if (type.isRecordDeclaration()) {
+			return EntityKind.RECORD;
+		} else {
+			return EntityKind.OTHER;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package edu.mimuw.plugin.summary;
+
+import java.util.List;
+
+import edu.mimuw.sovaide.domain.model.EntityKind;
+import edu.mimuw.sovaide.domain.model.MemberKind;
+
+/**
+ * Compact description of a parsed Java source file: everything the plugins read from a
+ * {@code CompilationUnit}, without the syntax tree itself.
+ *
+ * @param packageName package declared by the file, empty for the default package
+ * @param lineCount   number of lines in the file, not counting trailing empty lines
+ * @param imports     import declarations in source order
+ * @param types       top-level type declarations in source order
+ */
+public record SourceSummary(String packageName, int lineCount, List<ImportSummary> imports,
+		List<TypeSummary> types) {
+
+	public record ImportSummary(String name, boolean isStatic, boolean isAsterisk) {
+	}
+
+	/**
+	 * @param beginLine first line of the declaration, including its leading comment
+	 * @param endLine   last line of the declaration
+	 */
+	public record TypeSummary(String name, EntityKind kind, int beginLine, int endLine,
+			List<MemberSummary> members) {
+
+		public int lineCount() {
+			return endLine - beginLine + 1;
+		}
+
+		public long methodCount() {
+			return members.stream().filter(member -> member.kind() == MemberKind.METHOD).count();
+		}
+	}
+
+	/**
+	 * Position of a member in the source text, including its leading comment.
+	 *
+	 * @param beginOffset offset of the first character of the member
+	 * @param endOffset   offset just past the last character of the member
+	 */
+	public record MemberSummary(MemberKind kind, int beginOffset, int endOffset) {
+
+		public String source(String content) {
+			return content.substring(beginOffset, endOffset);
+		}
+	}
+
+	public String fullName(TypeSummary type) {
+		return packageName.isEmpty() ? type.name() : packageName + "." + type.name();
+	}
+}
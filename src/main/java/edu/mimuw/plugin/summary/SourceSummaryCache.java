@@ -0,0 +1,345 @@
+package edu.mimuw.plugin.summary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ParserConfiguration.LanguageLevel;
+import com.github.javaparser.ast.CompilationUnit;
+
+import edu.mimuw.plugin.summary.SourceSummary.ImportSummary;
+import edu.mimuw.plugin.summary.SourceSummary.MemberSummary;
+import edu.mimuw.plugin.summary.SourceSummary.TypeSummary;
+import edu.mimuw.sovaide.domain.model.EntityKind;
+import edu.mimuw.sovaide.domain.model.MemberKind;
+
+/**
+ * Cache of {@link SourceSummary summaries} keyed by the SHA-256 hash of the source text and the
+ * {@link ParseProfile profile} it was parsed with, shared by all plugins. Summaries are kept in a small
+ * in-memory LRU map and in a directory on disk, so a source that was parsed once, by any plugin and in
+ * any earlier run, does not have to be parsed again.
+ * <p>
+ * The disk cache is bounded by size: when it grows over the limit, the least recently used entries
+ * are removed. Its location and limit can be set with the {@value #DIRECTORY_PROPERTY} and
+ * {@value #MAX_BYTES_PROPERTY} system properties.
+ */
+public class SourceSummaryCache {
+
+	public static final String DIRECTORY_PROPERTY = "sova.parse-cache.dir";
+
+	public static final String MAX_BYTES_PROPERTY = "sova.parse-cache.max-bytes";
+
+	// 2: skeleton ranges include leading comments
+	private static final int FORMAT_VERSION = 2;
+
+	private static final int MEMORY_ENTRIES = 4096;
+
+	private static final SourceSummaryCache SHARED = new SourceSummaryCache(
+			Path.of(System.getProperty(DIRECTORY_PROPERTY, System.getProperty("java.io.tmpdir") + "/sova-parse-cache")),
+			Long.getLong(MAX_BYTES_PROPERTY, 256L * 1024 * 1024),
+			MEMORY_ENTRIES);
+
+	private final Path directory;
+
+	private final long maxDiskBytes;
+
+	private final Map<String, SourceSummary> memory;
+
+	private final AtomicLong diskBytes = new AtomicLong(-1);
+
+	// the static parser shares a single configuration, so every thread gets its own instance; the default
+	// language level predates records
+	private final ThreadLocal<JavaParser> parsers = ThreadLocal.withInitial(() -> new JavaParser(
+			new ParserConfiguration().setLanguageLevel(LanguageLevel.JAVA_21)));
+
+	// comments outside of bodies are kept and attributed, so skeleton ranges include them like full ones
+	private final ThreadLocal<JavaParser> skeletonParsers = ThreadLocal.withInitial(() -> new JavaParser(
+			new ParserConfiguration().setLanguageLevel(LanguageLevel.JAVA_21)));
+
+	/**
+	 * @param directory        where summaries are stored, {@code null} keeps them in memory only
+	 * @param maxDiskBytes     size of the directory after which old summaries are removed
+	 * @param maxMemoryEntries number of summaries kept in memory
+	 */
+	public SourceSummaryCache(Path directory, long maxDiskBytes, int maxMemoryEntries) {
+		this.directory = directory;
+		this.maxDiskBytes = maxDiskBytes;
+		this.memory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SourceSummary> eldest) {
+				return size() > maxMemoryEntries;
+			}
+		});
+	}
+
+	public static SourceSummaryCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the summary of the given source, parsing it only if no plugin has done so before.
+	 *
+	 * @throws ParseProblemException if the source has to be parsed and is not valid Java
+	 */
+	public SourceSummary summarize(String content) {
+		return summarize(content, ParseProfile.FULL);
+	}
+
+	/**
+	 * Returns the summary of the given source as parsed with the given profile. Summaries of different
+	 * profiles are cached separately.
+	 *
+	 * @throws ParseProblemException if the source has to be parsed and is not valid Java
+	 */
+	public SourceSummary summarize(String content, ParseProfile profile) {
+		String hash = hash(content);
+		SourceSummary summary = cached(hash, profile);
+		return summary != null ? summary : parse(hash, content, profile);
+	}
+
+	/**
+	 * Returns the summary of the given source as parsed with any profile, for callers that need only its
+	 * declarations and imports. A source no plugin has summarized yet is parsed with the cheaper
+	 * {@link ParseProfile#SKELETON skeleton} profile.
+	 *
+	 * @throws ParseProblemException if the source has to be parsed and is not valid Java
+	 */
+	public SourceSummary summarizeDeclarations(String content) {
+		String hash = hash(content);
+		SourceSummary summary = cached(hash, ParseProfile.FULL);
+		if (summary == null) {
+			summary = cached(hash, ParseProfile.SKELETON);
+		}
+		return summary != null ? summary : parse(hash, content, ParseProfile.SKELETON);
+	}
+
+	private SourceSummary cached(String hash, ParseProfile profile) {
+		String key = key(hash, profile);
+		SourceSummary summary = memory.get(key);
+		if (summary == null) {
+			summary = readFromDisk(key);
+			if (summary != null) {
+				memory.put(key, summary);
+			}
+		}
+		return summary;
+	}
+
+	private SourceSummary parse(String hash, String content, ParseProfile profile) {
+		SourceSummary summary = profile == ParseProfile.FULL ?
+				SourceSummarizer.summarize(parse(parsers.get(), content), content, profile) :
+				SourceSummarizer.summarize(parse(skeletonParsers.get(), BodyStripper.strip(content)), content, profile);
+		String key = key(hash, profile);
+		writeToDisk(key, summary);
+		memory.put(key, summary);
+		return summary;
+	}
+
+	private static String key(String hash, ParseProfile profile) {
+		return profile == ParseProfile.FULL ? hash : hash + "-" + profile.name().toLowerCase();
+	}
+
+	/**
+	 * Removes all summaries from memory and from disk.
+	 */
+	public synchronized void clear() {
+		memory.clear();
+		if (directory == null || !Files.isDirectory(directory)) {
+			return;
+		}
+		try (Stream<Path> walk = Files.walk(directory)) {
+			for (Path file : walk.filter(Files::isRegularFile).toList()) {
+				Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			System.err.println("Error clearing parse cache " + directory + ": " + e.getMessage());
+		}
+		diskBytes.set(0);
+	}
+
+	private CompilationUnit parse(JavaParser parser, String content) {
+		ParseResult<CompilationUnit> result = parser.parse(content);
+		if (!result.isSuccessful() || result.getResult().isEmpty()) {
+			throw new ParseProblemException(result.getProblems());
+		}
+		return result.getResult().get();
+	}
+
+	private SourceSummary readFromDisk(String hash) {
+		if (directory == null) {
+			return null;
+		}
+		Path file = entryPath(hash);
+		try {
+			byte[] bytes = Files.readAllBytes(file);
+			// mark the entry as recently used for eviction
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return decode(bytes);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			System.err.println("Error reading parse cache entry " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void writeToDisk(String hash, SourceSummary summary) {
+		if (directory == null) {
+			return;
+		}
+		Path file = entryPath(hash);
+		try {
+			byte[] bytes = encode(summary);
+			Files.createDirectories(file.getParent());
+			Path temp = Files.createTempFile(file.getParent(), hash, ".tmp");
+			Files.write(temp, bytes);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			if (currentDiskBytes() + bytes.length > maxDiskBytes) {
+				evict();
+			} else {
+				diskBytes.addAndGet(bytes.length);
+			}
+		} catch (IOException e) {
+			System.err.println("Error writing parse cache entry " + file + ": " + e.getMessage());
+		}
+	}
+
+	private long currentDiskBytes() throws IOException {
+		if (diskBytes.get() < 0) {
+			diskBytes.compareAndSet(-1, directorySize());
+		}
+		return diskBytes.get();
+	}
+
+	// removes the least recently used entries until the cache is well below its limit
+	private synchronized void evict() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (Stream<Path> walk = Files.walk(directory)) {
+			walk.filter(Files::isRegularFile).forEach(files::add);
+		}
+		Map<Path, Long> lastUsed = new LinkedHashMap<>();
+		long total = 0;
+		for (Path file : files) {
+			lastUsed.put(file, Files.getLastModifiedTime(file).toMillis());
+			total += Files.size(file);
+		}
+		files.sort(Comparator.comparing(lastUsed::get));
+
+		long target = maxDiskBytes * 9 / 10;
+		for (Path file : files) {
+			if (total <= target) {
+				break;
+			}
+			long size = Files.size(file);
+			Files.deleteIfExists(file);
+			total -= size;
+		}
+		diskBytes.set(total);
+	}
+
+	private long directorySize() throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return 0;
+		}
+		try (Stream<Path> walk = Files.walk(directory)) {
+			return walk.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+		}
+	}
+
+	private Path entryPath(String hash) {
+		return directory.resolve(hash.substring(0, 2)).resolve(hash + ".bin");
+	}
+
+	private static String hash(String content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	static byte[] encode(SourceSummary summary) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(summary.packageName());
+			out.writeInt(summary.lineCount());
+			out.writeInt(summary.imports().size());
+			for (ImportSummary im : summary.imports()) {
+				out.writeUTF(im.name());
+				out.writeBoolean(im.isStatic());
+				out.writeBoolean(im.isAsterisk());
+			}
+			out.writeInt(summary.types().size());
+			for (TypeSummary type : summary.types()) {
+				out.writeUTF(type.name());
+				out.writeUTF(type.kind().name());
+				out.writeInt(type.beginLine());
+				out.writeInt(type.endLine());
+				out.writeInt(type.members().size());
+				for (MemberSummary member : type.members()) {
+					out.writeUTF(member.kind().name());
+					out.writeInt(member.beginOffset());
+					out.writeInt(member.endOffset());
+				}
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	static SourceSummary decode(byte[] bytes) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			if (in.readInt() != FORMAT_VERSION) {
+				return null;
+			}
+			String packageName = in.readUTF();
+			int lineCount = in.readInt();
+			int importCount = in.readInt();
+			List<ImportSummary> imports = new ArrayList<>(importCount);
+			for (int i = 0; i < importCount; i++) {
+				imports.add(new ImportSummary(in.readUTF(), in.readBoolean(), in.readBoolean()));
+			}
+			int typeCount = in.readInt();
+			List<TypeSummary> types = new ArrayList<>(typeCount);
+			for (int i = 0; i < typeCount; i++) {
+				String name = in.readUTF();
+				EntityKind kind = EntityKind.valueOf(in.readUTF());
+				int beginLine = in.readInt();
+				int endLine = in.readInt();
+				int memberCount = in.readInt();
+				List<MemberSummary> members = new ArrayList<>(memberCount);
+				for (int j = 0; j < memberCount; j++) {
+					members.add(new MemberSummary(MemberKind.valueOf(in.readUTF()), in.readInt(), in.readInt()));
+				}
+				types.add(new TypeSummary(name, kind, beginLine, endLine, List.copyOf(members)));
+			}
+			return new SourceSummary(packageName, lineCount, List.copyOf(imports), List.copyOf(types));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupted parse cache entry", e);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package edu.mimuw.plugin.summary;
+
+import java.util.Arrays;
+
+import com.github.javaparser.Position;
+
+/**
+ * Maps JavaParser positions back to offsets in the original source, so that parts of a file can be
+ * cut out of the text as written instead of being pretty-printed again.
+ */
+class SourceText {
+
+	private final String content;
+
+	private int[] lineStarts;
+
+	SourceText(String content) {
+		this.content = content;
+	}
+
+	// range ends are inclusive, so the exclusive end offset is one past the end position
+	int endOffset(Position end) {
+		return Math.min(offset(end) + 1, content.length());
+	}
+
+	int offset(Position position) {
+		int[] starts = lineStarts();
+		int line = Math.min(Math.max(position.line, 1), starts.length);
+		return Math.min(starts[line - 1] + Math.max(position.column, 1) - 1, content.length());
+	}
+
+	char charAt(int offset) {
+		return content.charAt(offset);
+	}
+
+	private int[] lineStarts() {
+		if (lineStarts == null) {
+			int[] starts = new int[16];
+			int count = 1;
+			for (int i = 0; i < content.length(); i++) {
+				char c = content.charAt(i);
+				if (c == '\r' && i + 1 < content.length() && content.charAt(i + 1) == '\n') {
+					continue;
+				}
+				if (c == '\n' || c == '\r') {
+					if (count == starts.length) {
+						starts = Arrays.copyOf(starts, count * 2);
+					}
+					starts[count++] = i + 1;
+				}
+			}
+			lineStarts = Arrays.copyOf(starts, count);
+		}
+		return lineStarts;
+	}
+}
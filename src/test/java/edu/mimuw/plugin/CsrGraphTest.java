@@ -0,0 +1,92 @@
+package edu.mimuw.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.mimuw.plugin.CsrGraph.Components;
+
+class CsrGraphTest {
+
+	// two cycles joined by an edge, a self loop, an isolated node and a sink, with one edge given twice
+	private static final int[][] EDGES = {
+			{0, 1}, {1, 2}, {2, 0}, {0, 1},
+			{2, 3}, {3, 4}, {4, 3},
+			{6, 6},
+			{4, 7}
+	};
+
+	@Test
+	void sortsRowsAndDropsRepeatedEdges() {
+		CsrGraph graph = graph(8, EDGES);
+
+		assertEquals(8, graph.nodeCount());
+		assertEquals(8, graph.edgeCount());
+		assertEquals(1, graph.outDegree(0));
+		assertEquals(2, graph.outDegree(2));
+		assertEquals(0, graph.outDegree(5));
+		assertEquals(0, graph.target(graph.firstEdge(2)));
+		assertEquals(3, graph.target(graph.firstEdge(2) + 1));
+		assertArrayEquals(new int[] {1, 1, 1, 2, 1, 0, 1, 1}, graph.inDegrees());
+	}
+
+	@Test
+	void findsStronglyConnectedComponents() {
+		Components components = graph(8, EDGES).stronglyConnectedComponents();
+		int[] componentOf = components.componentOf();
+
+		assertEquals(5, components.count());
+		assertEquals(componentOf[0], componentOf[1]);
+		assertEquals(componentOf[0], componentOf[2]);
+		assertEquals(componentOf[3], componentOf[4]);
+		assertNotEquals(componentOf[0], componentOf[3]);
+		assertNotEquals(componentOf[5], componentOf[6]);
+		assertEquals(3, components.sizes()[componentOf[0]]);
+		assertEquals(2, components.sizes()[componentOf[3]]);
+		assertEquals(1, components.sizes()[componentOf[6]]);
+		assertEquals(1, components.sizes()[componentOf[7]]);
+	}
+
+	@Test
+	void numbersComponentsInReverseTopologicalOrder() {
+		CsrGraph graph = graph(8, EDGES);
+		int[] componentOf = graph.stronglyConnectedComponents().componentOf();
+
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++) {
+				assertTrue(componentOf[graph.target(edge)] <= componentOf[node], node + " -> " + graph.target(edge));
+			}
+		}
+		assertTrue(componentOf[7] < componentOf[3]);
+		assertTrue(componentOf[3] < componentOf[0]);
+	}
+
+	@Test
+	void handlesChainsLongerThanTheThreadStack() {
+		int nodeCount = 500_000;
+		int[] sources = new int[nodeCount];
+		int[] targets = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			sources[i] = i;
+			targets[i] = (i + 1) % nodeCount;
+		}
+
+		Components components = CsrGraph.of(nodeCount, sources, targets, nodeCount).stronglyConnectedComponents();
+
+		assertEquals(1, components.count());
+		assertEquals(nodeCount, components.sizes()[0]);
+	}
+
+	private static CsrGraph graph(int nodeCount, int[][] edges) {
+		int[] sources = new int[edges.length];
+		int[] targets = new int[edges.length];
+		for (int i = 0; i < edges.length; i++) {
+			sources[i] = edges[i][0];
+			targets[i] = edges[i][1];
+		}
+		return CsrGraph.of(nodeCount, sources, targets, edges.length);
+	}
+}
@@ -0,0 +1,172 @@
+package edu.mimuw.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import edu.mimuw.plugin.ImportGraph.ReferenceKind;
+import edu.mimuw.plugin.instrument.PluginRunControl;
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
+import edu.mimuw.sovaide.domain.graph.GraphNode;
+
+class ImportGraphTest {
+
+	@Test
+	void resolvesImportsOfEveryKind() {
+		Map<String, ReferenceKind> imports = imports("Client", List.of(
+				entity("Client", """
+						package a.b;
+
+						import c.d.Imported;
+						import static c.d.Util.helper;
+						import static c.d.Constants.*;
+						import e.f.*;
+						import c.d.Outer.*;
+
+						class Client extends Same {
+							Wildcard wildcard;
+							Member member;
+							g.h.Qualified qualified;
+						}
+						"""),
+				entity("Same", "package a.b; class Same {}"),
+				entity("Imported", "package c.d; public class Imported {}"),
+				entity("Util", "package c.d; public class Util { public static void helper() {} }"),
+				entity("Constants", "package c.d; public class Constants { public static final int A = 1; }"),
+				entity("Wildcard", "package e.f; public class Wildcard {}"),
+				entity("Outer", "package c.d; public class Outer { public static class Member {} }"),
+				entity("Qualified", "package g.h; public class Qualified {}"),
+				entity("Unused", "package e.f; public class Unused {}")));
+
+		assertEquals(Map.of(
+				"a.b.Same", ReferenceKind.SAME_PACKAGE,
+				"c.d.Imported", ReferenceKind.IMPORT,
+				"c.d.Util", ReferenceKind.STATIC_IMPORT,
+				"c.d.Constants", ReferenceKind.STATIC_IMPORT,
+				"e.f.Wildcard", ReferenceKind.WILDCARD_IMPORT,
+				"c.d.Outer", ReferenceKind.WILDCARD_IMPORT,
+				"g.h.Qualified", ReferenceKind.QUALIFIED_NAME), imports);
+	}
+
+	@Test
+	void resolvesQualifiedNamesOfTheSamePackage() {
+		// the form a class file stub takes when the simple name of its supertype is ambiguous
+		Map<String, ReferenceKind> imports = imports("Stub", List.of(
+				entity("Stub", """
+						package a.b;
+
+						public class Stub extends a.b.Base implements a.b.Outer.Listener {
+							Object value = a.b.Factory.create();
+						}
+						"""),
+				entity("Base", "package a.b; public class Base {}"),
+				entity("Outer", "package a.b; public class Outer { public interface Listener {} }"),
+				entity("Factory", "package a.b; public class Factory { static Object create() { return null; } }")));
+
+		assertEquals(Map.of(
+				"a.b.Base", ReferenceKind.QUALIFIED_NAME,
+				"a.b.Outer", ReferenceKind.QUALIFIED_NAME,
+				"a.b.Factory", ReferenceKind.QUALIFIED_NAME), imports);
+	}
+
+	@Test
+	void skipsShadowedNames() {
+		Map<String, ReferenceKind> imports = imports("Box", List.of(
+				entity("Box", """
+						package a.b;
+
+						import c.d.Imported;
+
+						class Box<Param> {
+							Param value;
+							Imported imported;
+							Member member;
+
+							<Generic> Generic get(Generic generic) {
+								return generic;
+							}
+
+							class Member {
+							}
+						}
+						"""),
+				entity("Param", "package a.b; class Param {}"),
+				entity("Generic", "package a.b; class Generic {}"),
+				entity("Member", "package a.b; class Member {}"),
+				entity("Imported", "package a.b; class Imported {}"),
+				entity("Imported", "package c.d; public class Imported {}")));
+
+		assertEquals(Map.of("c.d.Imported", ReferenceKind.IMPORT), imports);
+	}
+
+	@Test
+	void scopesReferencesToTheirTopLevelType() {
+		String content = """
+				package a.b;
+
+				import c.d.Imported;
+
+				@Marker
+				class First extends Base {
+					g.h.Qualified qualified;
+				}
+
+				class Second {
+					Helper helper;
+				}
+				""";
+		List<GraphNode> entities = List.of(
+				entity("First", content),
+				entity("Second", content),
+				entity("Base", "package a.b; class Base {}"),
+				entity("Marker", "package a.b; @interface Marker {}"),
+				entity("Helper", "package a.b; class Helper {}"),
+				entity("Qualified", "package g.h; public class Qualified {}"),
+				entity("Imported", "package c.d; public class Imported {}"));
+
+		assertEquals(Map.of(
+				"a.b.Base", ReferenceKind.SAME_PACKAGE,
+				"a.b.Marker", ReferenceKind.SAME_PACKAGE,
+				"g.h.Qualified", ReferenceKind.QUALIFIED_NAME,
+				"c.d.Imported", ReferenceKind.IMPORT), imports("First", entities));
+		// imports belong to the file, names used in the body of another type do not
+		assertEquals(Map.of(
+				"a.b.Helper", ReferenceKind.SAME_PACKAGE,
+				"c.d.Imported", ReferenceKind.IMPORT), imports("Second", entities));
+	}
+
+	/**
+	 * @return kinds of the imports of the named entity, by the full name of the imported class
+	 */
+	private static Map<String, ReferenceKind> imports(String name, List<GraphNode> entities) {
+		ImportGraph graph = ImportGraph.build(entities, new SourceSummaryCache(null, 0, 16),
+				new PluginRunMetrics("test"), PluginRunControl.unbounded());
+		Map<String, ReferenceKind> imports = new HashMap<>();
+		for (int edge = 0; edge < graph.edgeCount(); edge++) {
+			if (graph.entity(graph.edgeSource(edge)).getProperties().get("name").equals(name)) {
+				imports.put(graph.fullClassName(graph.edgeTarget(edge)), graph.edgeKind(edge));
+			}
+		}
+		return imports;
+	}
+
+	private static GraphNode entity(String name, String content) {
+		Map<String, Object> properties = Map.of("name", name, "content", content);
+		return new GraphNode() {
+			@Override
+			public String getId() {
+				return name;
+			}
+
+			@Override
+			public Map<String, Object> getProperties() {
+				return properties;
+			}
+		};
+	}
+}
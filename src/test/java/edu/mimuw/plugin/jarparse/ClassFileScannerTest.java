@@ -0,0 +1,161 @@
+package edu.mimuw.plugin.jarparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import edu.mimuw.plugin.jarparse.ClassFileScanner.ClassFileSummary;
+
+class ClassFileScannerTest {
+
+	private final ClassFileScanner scanner = new ClassFileScanner();
+
+	/**
+	 * Its constant pool holds eight byte constants, which take up two entries, followed by the method
+	 * handles and invokedynamic entries of its lambdas and method references.
+	 */
+	static class Constants implements Cloneable, Supplier<String> {
+
+		static final long BIG = 0x1234_5678_9ABCL;
+
+		static final double RATIO = 2.718281828;
+
+		long scaled(long value) {
+			return value * 987_654_321_012L + Double.doubleToLongBits(RATIO * 3.14159);
+		}
+
+		@Override
+		public String get() {
+			Callable<BigDecimal> callable = () -> BigDecimal.valueOf(BIG);
+			Supplier<Pattern> compiled = () -> Pattern.compile("[a-z]+");
+			return List.of(callable, compiled).stream().map(Object::toString).reduce("", String::concat);
+		}
+	}
+
+	interface Nested {
+
+		// compiled to a class file of its own, whose outer class is not recorded
+		Runnable ANONYMOUS = new Runnable() {
+			@Override
+			public void run() {
+				System.out.println(new StringBuilder("anonymous"));
+			}
+		};
+	}
+
+	@Test
+	void skipsEightByteConstantsAndDynamicEntries() throws IOException {
+		ClassFileSummary summary = scan(Constants.class);
+
+		assertEquals(Constants.class.getName(), summary.name());
+		assertNull(summary.superName());
+		assertEquals(List.of("java.lang.Cloneable", "java.util.function.Supplier"), summary.interfaces());
+		assertTrue(summary.referencedClasses().containsAll(
+				List.of("java.math.BigDecimal", "java.util.regex.Pattern", "java.util.concurrent.Callable")));
+		assertFalse(summary.referencedClasses().contains(Constants.class.getName()));
+	}
+
+	@Test
+	void findsTopLevelClassOfNestedClasses() throws IOException {
+		ClassFileSummary topLevel = scan(ClassFileScannerTest.class);
+		assertFalse(topLevel.isNested());
+		assertEquals(ClassFileScannerTest.class.getName(), topLevel.topLevelName());
+
+		ClassFileSummary nested = scan(Constants.class);
+		assertTrue(nested.isNested());
+		assertEquals(ClassFileScannerTest.class.getName(), nested.topLevelName());
+
+		ClassFileSummary anonymous = scan(Nested.ANONYMOUS.getClass());
+		assertTrue(anonymous.referencedClasses().contains("java.lang.StringBuilder"));
+		assertEquals(ClassFileScannerTest.class.getName(), anonymous.topLevelName());
+	}
+
+	@Test
+	void findsTopLevelClassOfLocalClasses() throws IOException {
+		class Local {
+		}
+
+		assertEquals(ClassFileScannerTest.class.getName(), scan(Local.class).topLevelName());
+	}
+
+	@Test
+	void decodesModifiedUtf8Names() throws IOException {
+		// written by hand, as not every file system can store a class file with such a name
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(65);
+		out.writeShort(7); // entry 2 is the second half of the long
+		out.writeByte(5);
+		out.writeLong(Long.MIN_VALUE);
+		out.writeByte(1);
+		// null and supplementary characters have encodings of their own in modified UTF-8
+		out.writeUTF("pl/zażółć/Gęśl\u0000😀");
+		out.writeByte(7);
+		out.writeShort(3);
+		out.writeByte(1);
+		out.writeUTF("java/lang/Object");
+		out.writeByte(7);
+		out.writeShort(5);
+		out.writeShort(0x0021);
+		out.writeShort(4);
+		out.writeShort(6);
+		out.writeShort(0); // interfaces
+		out.writeShort(0); // fields
+		out.writeShort(0); // methods
+		out.writeShort(0); // attributes
+
+		ClassFileSummary summary = scanner.scan(bytes.toByteArray());
+
+		assertEquals("pl.zażółć.Gęśl\u0000😀", summary.name());
+		assertEquals("pl.zażółć", summary.packageName());
+		assertNull(summary.superName());
+		assertFalse(summary.isNested());
+	}
+
+	@Test
+	void scansDirectBuffers() throws IOException {
+		byte[] bytes = classFile(Constants.class);
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+
+		assertEquals(scanner.scan(bytes), scanner.scan(direct));
+	}
+
+	@Test
+	void rejectsOtherFiles() throws IOException {
+		byte[] bytes = classFile(Constants.class);
+
+		assertThrows(IllegalArgumentException.class, () -> scanner.scan("not a class file".getBytes()));
+		assertThrows(IllegalArgumentException.class, () -> scanner.scan(Arrays.copyOf(bytes, bytes.length / 2)));
+		assertThrows(IllegalArgumentException.class, () -> scanner.scan(Arrays.copyOf(bytes, bytes.length - 1)));
+	}
+
+	private ClassFileSummary scan(Class<?> type) throws IOException {
+		return scanner.scan(classFile(type));
+	}
+
+	private static byte[] classFile(Class<?> type) throws IOException {
+		String name = type.getName();
+		try (InputStream is = type.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+			return is.readAllBytes();
+		}
+	}
+}
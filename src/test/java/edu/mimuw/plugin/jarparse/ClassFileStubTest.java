@@ -0,0 +1,101 @@
+package edu.mimuw.plugin.jarparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import edu.mimuw.plugin.jarparse.ClassFileScanner.ClassFileSummary;
+import edu.mimuw.plugin.summary.SourceSummary;
+import edu.mimuw.plugin.summary.SourceSummaryCache;
+import edu.mimuw.sovaide.domain.model.EntityKind;
+
+class ClassFileStubTest {
+
+	@Test
+	void mergesReferencesOfNestedClasses() {
+		ClassFileSummary outer = new ClassFileSummary("a.b.Outer", 0x0021, null, List.of(),
+				Set.of("java.util.List", "a.b.Outer$Inner"), "a.b.Outer");
+		ClassFileSummary inner = new ClassFileSummary("a.b.Outer$Inner", 0x0020, null, List.of(),
+				Set.of("java.util.Map", "a.b.Outer", "a.b.Outer$1"), "a.b.Outer");
+		ClassFileSummary anonymous = new ClassFileSummary("a.b.Outer$1", 0x0020, null, List.of("java.lang.Runnable"),
+				Set.of("java.lang.Runnable", "c.d.Helper$Nested"), "a.b.Outer");
+
+		String stub = ClassFileStub.render(outer, List.of(inner, anonymous));
+
+		assertEquals("""
+				package a.b;
+
+				import c.d.Helper;
+				import java.util.List;
+				import java.util.Map;
+
+				public class Outer {
+				}
+				""", stub);
+	}
+
+	@Test
+	void importsClassesOfTheSamePackage() {
+		ClassFileSummary summary = new ClassFileSummary("a.b.Service", 0x0021, "a.b.Base", List.of("c.d.Api$Listener"),
+				Set.of("a.b.Base", "a.b.Helper", "c.d.Api$Listener", "Unnamed", "java.lang.String"), "a.b.Service");
+
+		String stub = ClassFileStub.render(summary, List.of());
+
+		assertEquals("""
+				package a.b;
+
+				import a.b.Base;
+				import a.b.Helper;
+				import c.d.Api;
+
+				public class Service extends Base implements Api.Listener {
+				}
+				""", stub);
+	}
+
+	@Test
+	void qualifiesAmbiguousSupertypes() {
+		ClassFileSummary summary = new ClassFileSummary("a.b.List", 0x0021, "c.d.List", List.of("java.lang.Comparable"),
+				Set.of("c.d.List", "e.f.Comparable", "java.lang.Comparable"), "a.b.List");
+
+		String stub = ClassFileStub.render(summary, List.of());
+
+		assertTrue(stub.contains("public class List extends c.d.List implements java.lang.Comparable {"), stub);
+	}
+
+	@Test
+	void rendersRecordsAsRecords() {
+		ClassFileSummary summary = new ClassFileSummary("a.b.Point", 0x0031, "java.lang.Record",
+				List.of("java.lang.Comparable"), Set.of("java.lang.Record", "java.lang.Comparable", "c.d.Helper"),
+				"a.b.Point");
+
+		String stub = ClassFileStub.render(summary, List.of());
+
+		assertEquals("""
+				package a.b;
+
+				import c.d.Helper;
+
+				public record Point() implements Comparable {
+				}
+				""", stub);
+		SourceSummary parsed = new SourceSummaryCache(null, 0, 1).summarize(stub);
+		assertEquals(EntityKind.RECORD, parsed.types().getFirst().kind());
+	}
+
+	@Test
+	void rendersOnlyTopLevelClasses() {
+		Set<String> none = Set.of();
+
+		assertTrue(ClassFileStub.isTopLevel(new ClassFileSummary("a.Top$Level", 0x0021, null, List.of(), none,
+				"a.Top$Level")));
+		assertFalse(ClassFileStub.isTopLevel(new ClassFileSummary("a.Top$1", 0x0020, null, List.of(), none, "a.Top")));
+		assertFalse(ClassFileStub.isTopLevel(new ClassFileSummary("a.package-info", 0x1600, null, List.of(), none,
+				"a.package-info")));
+	}
+}
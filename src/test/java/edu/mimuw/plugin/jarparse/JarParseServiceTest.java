@@ -0,0 +1,101 @@
+package edu.mimuw.plugin.jarparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import edu.mimuw.plugin.instrument.PluginRunMetrics;
+import edu.mimuw.plugin.summary.ParseProfile;
+import edu.mimuw.sovaide.domain.model.File;
+import edu.mimuw.sovaide.domain.model.Project;
+import edu.mimuw.sovaide.domain.model.repository.ProjectRepository;
+
+class JarParseServiceTest {
+
+	@Test
+	void keepsUnchangedClassFilesWhenReingesting() throws IOException {
+		Path directory = Files.createTempDirectory("jar-parse-test");
+		System.setProperty(IngestManifest.DIRECTORY_PROPERTY, directory.resolve("manifest").toString());
+		Path jar = directory.resolve("app.jar");
+		// this class, its nested classes and a source, so the archive holds a top-level class with its nested ones
+		writeJar(jar, List.of(JarParseServiceTest.class, Fixture.class, Fixture.Nested.class));
+
+		Project project = project("reingest-" + System.nanoTime());
+		JarParseSummary first = parse(project, jar);
+		List<File> stored = new ArrayList<>(project.getFiles());
+
+		JarParseSummary second = parse(project, jar);
+
+		assertEquals(4, first.filesProcessed());
+		assertEquals(4, second.unchangedEntries());
+		assertEquals(0, second.changedEntries());
+		assertEquals(0, second.addedEntries());
+		assertEquals(0, second.removedEntries());
+		for (int i = 0; i < stored.size(); i++) {
+			assertSame(stored.get(i), project.getFiles().get(i), stored.get(i).getPath());
+		}
+	}
+
+	private static JarParseSummary parse(Project project, Path jar) {
+		JarParseOptions options = new JarParseOptions(1, 0, Long.MAX_VALUE, true, false, ParseProfile.SKELETON,
+				false);
+		return new JarParseService(repository(project), options, new PluginRunMetrics("test"))
+				.parse(project, jar.toString());
+	}
+
+	private static void writeJar(Path jar, List<Class<?>> classes) throws IOException {
+		try (OutputStream os = Files.newOutputStream(jar); JarOutputStream out = new JarOutputStream(os)) {
+			for (Class<?> type : classes) {
+				String name = type.getName().replace('.', '/') + ".class";
+				out.putNextEntry(new JarEntry(name));
+				try (InputStream is = type.getResourceAsStream("/" + name)) {
+					is.transferTo(out);
+				}
+			}
+			out.putNextEntry(new JarEntry("a/b/Source.java"));
+			out.write("package a.b;\n\npublic class Source {\n}\n".getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static Project project(String id) {
+		return new Project() {
+			@Override
+			public String getId() {
+				return id;
+			}
+		};
+	}
+
+	private static ProjectRepository repository(Project project) {
+		return new ProjectRepository() {
+			@Override
+			public Project save(Project saved) {
+				return saved;
+			}
+
+			@Override
+			public Optional<Project> findById(String id) {
+				return Optional.of(project);
+			}
+		};
+	}
+
+	static class Fixture {
+
+		static class Nested {
+		}
+	}
+}
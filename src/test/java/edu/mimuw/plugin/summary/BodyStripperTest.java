@@ -0,0 +1,164 @@
+package edu.mimuw.plugin.summary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.mimuw.plugin.summary.SourceSummary.MemberSummary;
+import edu.mimuw.plugin.summary.SourceSummary.TypeSummary;
+
+class BodyStripperTest {
+
+	@Test
+	void blanksTextBlocksInsideBodies() {
+		String content = """
+				class Template {
+					String render() {
+						return \"""
+							{ "open": "}", "quote": \\\""" }
+							// not a comment
+							\""";
+					}
+
+					int after() {
+						return 1;
+					}
+				}
+				""";
+
+		String stripped = BodyStripper.strip(content);
+
+		assertSameLayout(content, stripped);
+		assertTrue(stripped.contains("String render() {"), stripped);
+		assertTrue(stripped.contains("int after() {"), stripped);
+		assertFalse(stripped.contains("open"), stripped);
+		assertFalse(stripped.contains("not a comment"), stripped);
+		assertFalse(stripped.contains("return"), stripped);
+		assertEquals(List.of("Template"), parsedNames(content));
+	}
+
+	@Test
+	void keepsDepthAcrossBracesInCharLiterals() {
+		String content = """
+				class Chars {
+					char open = '{';
+					char apostrophe = '\\'';
+					String close = "}" + '}';
+
+					void body() {
+						char brace = '}';
+						char quote = '"';
+					}
+
+					int kept;
+				}
+
+				enum Next {
+					A, B
+				}
+				""";
+
+		String stripped = BodyStripper.strip(content);
+
+		assertSameLayout(content, stripped);
+		assertTrue(stripped.contains("char open = '{';"), stripped);
+		assertTrue(stripped.contains("String close = \"}\" + '}';"), stripped);
+		assertTrue(stripped.contains("int kept;"), stripped);
+		assertFalse(stripped.contains("brace"), stripped);
+		assertTrue(stripped.contains("enum Next {"), stripped);
+		assertEquals(List.of("Chars", "Next"), parsedNames(content));
+	}
+
+	@Test
+	void keepsSignaturesWithNestedGenerics() {
+		String content = """
+				import java.util.*;
+
+				class Registry<K extends Comparable<? super K>, V extends List<Map<K, Set<V>>>> {
+					/* comment */ Map<K, List<Map<String, Set<V>>>> index = new HashMap<>();
+
+					<T extends Map<K, List<V>>> T find(Map<? extends K, ? super List<V>> query) {
+						Map<K, List<Map<String, Set<V>>>> local = new HashMap<>() {{ put(null, null); }};
+						return null;
+					}
+
+					static class Entry<E extends Comparable<E>> {
+						E value;
+					}
+				}
+				""";
+
+		String stripped = BodyStripper.strip(content);
+
+		assertSameLayout(content, stripped);
+		assertTrue(stripped.contains("class Registry<K extends Comparable<? super K>, V extends List<Map<K, Set<V>>>> {"),
+				stripped);
+		assertTrue(stripped.contains("Map<K, List<Map<String, Set<V>>>> index = new HashMap<>();"), stripped);
+		assertTrue(stripped.contains("<T extends Map<K, List<V>>> T find(Map<? extends K, ? super List<V>> query) {"),
+				stripped);
+		assertTrue(stripped.contains("static class Entry<E extends Comparable<E>> {"), stripped);
+		assertTrue(stripped.contains("/* comment */"), stripped);
+		assertFalse(stripped.contains("local"), stripped);
+		assertFalse(stripped.contains("E value"), stripped);
+
+		TypeSummary registry = summarize(content).types().getFirst();
+		assertEquals(3, registry.members().size());
+		assertEquals(1, registry.methodCount());
+	}
+
+	@Test
+	void keepsLeadingCommentsInRanges() {
+		String content = """
+				package a.b;
+
+				/**
+				 * Documented.
+				 */
+				class Documented {
+					// the count
+					int count;
+
+					/** Runs. */
+					void run() {
+						// inside
+					}
+				}
+				""";
+
+		String stripped = BodyStripper.strip(content);
+
+		assertTrue(stripped.contains("* Documented."), stripped);
+		assertTrue(stripped.contains("// the count"), stripped);
+		assertFalse(stripped.contains("inside"), stripped);
+		SourceSummaryCache cache = new SourceSummaryCache(null, 0, 2);
+		SourceSummary full = cache.summarize(content, ParseProfile.FULL);
+		SourceSummary skeleton = cache.summarize(content, ParseProfile.SKELETON);
+		assertEquals(3, skeleton.types().getFirst().beginLine());
+		assertEquals(full.types().getFirst().beginLine(), skeleton.types().getFirst().beginLine());
+		assertEquals(full.types().getFirst().members().stream().map(MemberSummary::beginOffset).toList(),
+				skeleton.types().getFirst().members().stream().map(MemberSummary::beginOffset).toList());
+	}
+
+	// offsets and line numbers of the stripped text are those of the original
+	private static void assertSameLayout(String content, String stripped) {
+		assertEquals(content.length(), stripped.length());
+		for (int i = 0; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (c == '\n' || c == '\r' || stripped.charAt(i) != ' ') {
+				assertEquals(c, stripped.charAt(i), "offset " + i);
+			}
+		}
+	}
+
+	private static List<String> parsedNames(String content) {
+		return summarize(content).types().stream().map(TypeSummary::name).toList();
+	}
+
+	private static SourceSummary summarize(String content) {
+		return new SourceSummaryCache(null, 0, 1).summarize(content, ParseProfile.SKELETON);
+	}
+}
@@ -0,0 +1,116 @@
+package edu.mimuw.plugin.summary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import edu.mimuw.plugin.summary.ReferenceScanner.ScannedReferences;
+
+class ReferenceScannerTest {
+
+	@Test
+	void collectsSimpleNamesButNotDeclarationsOrMethods() {
+		ScannedReferences references = ReferenceScanner.scan("""
+				package a.b;
+
+				import static c.d.Util.helper;
+				import e.f.*;
+
+				public class Service extends Base implements Listener {
+					private final Helper helper = new Helper();
+
+					void run() {
+						helper();
+						String text = "Quoted";
+						char c = 'x';
+						// Commented
+					}
+
+					@Marker
+					class Inner {
+					}
+				}
+				""");
+
+		assertTrue(references.simpleNames().containsAll(Set.of("Base", "Listener", "Helper", "String", "Marker")));
+		assertFalse(references.simpleNames().contains("Service"));
+		assertFalse(references.simpleNames().contains("Inner"));
+		assertFalse(references.simpleNames().contains("run"));
+		assertFalse(references.simpleNames().contains("Util"));
+		assertFalse(references.simpleNames().contains("Quoted"));
+		assertFalse(references.simpleNames().contains("Commented"));
+		assertEquals(Set.of("Inner"), references.memberTypes("Service"));
+	}
+
+	@Test
+	void collectsQualifiedNamesWhole() {
+		ScannedReferences references = ReferenceScanner.scan("""
+				package a.b;
+
+				class Service extends a.b.Base implements c.d.Api.Listener {
+					java.util.List<a.b.Same> items = a.b.Factory.create(this.items.size());
+					Object array = new Object[0].length;
+
+					void all(String... names) {
+						@a.b.Marker int x = "text".length();
+					}
+				}
+				""");
+
+		assertEquals(Set.of("a.b.Base", "c.d.Api.Listener", "java.util.List", "a.b.Same", "a.b.Factory.create",
+				"a.b.Marker"), references.qualifiedNames());
+		assertFalse(references.simpleNames().contains("Base"));
+		assertFalse(references.simpleNames().contains("names"));
+	}
+
+	@Test
+	void skipsNamesOfTypeParametersInTheirScope() {
+		ScannedReferences references = ReferenceScanner.scan("""
+				package a.b;
+
+				class Box<Same extends Comparable<Same>, @Marker Bound extends Limit & Other> {
+					Same value;
+
+					public static <Key, Value extends Map<Key, Value>> Value get(Key key) {
+						Key copy = key;
+						return null;
+					}
+
+					abstract <Arg> void accept(Arg arg);
+
+					Key key;
+				}
+
+				class Plain {
+					Same same;
+					Arg arg;
+					List<Bound> bounds = new ArrayList<>();
+					boolean less = count < Limit;
+				}
+				""");
+
+		Set<String> names = references.simpleNames();
+		assertTrue(names.containsAll(Set.of("Comparable", "Marker", "Limit", "Other", "Map", "List", "ArrayList")),
+				names.toString());
+		// the class Same, Key, Arg and Bound are referred to in Plain only, outside of the type parameter scopes
+		assertTrue(names.containsAll(Set.of("Same", "Key", "Arg", "Bound")), names.toString());
+
+		ScannedReferences shadowed = ReferenceScanner.scan("""
+				package a.b;
+
+				class Box<Same> {
+					Same value;
+
+					<Key> Key get(Key key) {
+						return key;
+					}
+				}
+				""");
+		assertFalse(shadowed.simpleNames().contains("Same"), shadowed.simpleNames().toString());
+		assertFalse(shadowed.simpleNames().contains("Key"), shadowed.simpleNames().toString());
+	}
+}
@@ -0,0 +1,123 @@
+package edu.mimuw.plugin.summary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.mimuw.plugin.summary.SourceScanner.LineCounts;
+import edu.mimuw.plugin.summary.SourceScanner.ScannedSource;
+import edu.mimuw.plugin.summary.SourceScanner.ScannedType;
+import edu.mimuw.sovaide.domain.model.EntityKind;
+
+class SourceScannerTest {
+
+	@Test
+	void ignoresBracesInTextBlocks() {
+		ScannedSource source = SourceScanner.scan("""
+				package a.b;
+
+				class Template {
+					String json = \"""
+						{ "open": "}", "quote": \\\""" }
+						// not a comment
+						\""";
+				}
+
+				interface After {
+				}
+				""");
+
+		assertEquals("a.b", source.packageName());
+		assertEquals(List.of("Template", "After"), names(source));
+		ScannedType template = source.types().getFirst();
+		assertEquals(3, template.beginLine());
+		assertEquals(8, template.endLine());
+		assertEquals(new LineCounts(6, 0, 0), template.lines());
+	}
+
+	@Test
+	void ignoresBracesAndQuotesInCharLiterals() {
+		ScannedSource source = SourceScanner.scan("""
+				class Chars {
+					char open = '{';
+					char quote = '"';
+					char apostrophe = '\\'';
+					char backslash = '\\\\';
+					String mixed = "'}'" + '}';
+				}
+
+				enum Next {
+					A, B
+				}
+				""");
+
+		assertEquals(List.of("Chars", "Next"), names(source));
+		assertEquals(7, source.types().getFirst().endLine());
+		assertEquals(EntityKind.ENUM, source.types().get(1).kind());
+	}
+
+	@Test
+	void readsDeclarationsWithNestedGenericsAndAnnotations() {
+		ScannedSource source = SourceScanner.scan("""
+				package a;
+
+				import java.util.*;
+
+				/**
+				 * Documented.
+				 */
+				@SuppressWarnings({"unchecked", "rawtypes"})
+				public final class Registry<K extends Comparable<? super K>, V extends List<Map<K, Set<V>>>>
+						implements Map.Entry<K, V> {
+
+					private final Map<K, List<Map<String, Set<V>>>> index = new HashMap<>();
+				}
+
+				@interface Marker {
+					Class<?>[] value() default {Object.class};
+				}
+
+				record Pair<A, B extends List<List<A>>>(A first, B second) {
+				}
+				""");
+
+		assertEquals(List.of("Registry", "Marker", "Pair"), names(source));
+		ScannedType registry = source.types().getFirst();
+		assertEquals(EntityKind.CLASS, registry.kind());
+		assertEquals(5, registry.beginLine());
+		assertEquals(13, registry.endLine());
+		assertEquals(new LineCounts(5, 3, 1), registry.lines());
+		assertEquals(EntityKind.ANNOTATION, source.types().get(1).kind());
+		assertEquals(EntityKind.RECORD, source.types().get(2).kind());
+	}
+
+	@Test
+	void countsLinesLikeTheParser() {
+		String content = """
+				package a;
+
+				// detached comment
+
+				/* leading */
+				class Counted {
+					/* a
+					   b */
+					int x; // trailing
+
+				}
+				""";
+		SourceSummary parsed = new SourceSummaryCache(null, 0, 1).summarize(content);
+		ScannedSource scanned = SourceScanner.scan(content);
+
+		assertEquals(parsed.lineCount(), scanned.lineCount());
+		assertEquals(parsed.types().getFirst().beginLine(), scanned.types().getFirst().beginLine());
+		assertEquals(parsed.types().getFirst().endLine(), scanned.types().getFirst().endLine());
+		assertEquals(new LineCounts(4, 4, 3), scanned.lines());
+	}
+
+	private static List<String> names(ScannedSource source) {
+		return source.types().stream().map(ScannedType::name).toList();
+	}
+}